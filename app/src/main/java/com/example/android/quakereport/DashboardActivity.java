@@ -0,0 +1,102 @@
+package com.example.android.quakereport;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.Menu;
+import android.view.MenuItem;
+
+// several regions and magnitude bands on one screen, see EarthquakeDashboard for the queries
+// sections fill in one by one as their queries complete, results survive rotation and leaving the screen
+public class DashboardActivity extends AppCompatActivity
+        implements EarthquakeDashboard.OnSectionLoadedListener {
+
+    private EarthquakeDashboard mDashboard;
+    private DashboardAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+
+        // super class constructor
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.dashboard_activity);
+
+        // Up returns to the list, see the parent declared in the manifest
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+
+        mDashboard = EarthquakeDashboard.getInstance(this);
+        mAdapter = new DashboardAdapter(this, mDashboard.getSections());
+
+        RecyclerView recyclerView = (RecyclerView) findViewById(R.id.dashboard_list);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setAdapter(mAdapter);
+
+        // click opens the in-app details, or the USGS page for an event without an id
+        mAdapter.setOnItemClickListener(new EarthquakeAdapter.OnItemClickListener() {
+            @Override
+            public void onItemClick(Earthquake earthquake) {
+
+                if (earthquake.getId() != null) {
+                    startActivity(EarthquakeDetailActivity.newIntent(DashboardActivity.this, earthquake));
+                    return;
+                }
+
+                // this conditional prevents the app from crashing by ensuring
+                // a web browser actually exists on the phone
+                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(earthquake.getUrl()));
+                if (websiteIntent.resolveActivity(getPackageManager()) != null) {
+                    startActivity(websiteIntent);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onStart() {
+
+        super.onStart();
+
+        // load the sections without a result, and pick up those that completed while stopped
+        mDashboard.setListener(this);
+        mDashboard.load(false);
+        mAdapter.updateAll();
+    }
+
+    @Override
+    protected void onStop() {
+
+        super.onStop();
+        mDashboard.setListener(null);
+    }
+
+    @Override
+    public void onSectionLoaded(int index, EarthquakeDashboard.Section section) {
+        mAdapter.updateSection(index);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+
+        getMenuInflater().inflate(R.menu.dashboard, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+
+        // every section queries again, the current rows stay until their new results arrive
+        if (item.getItemId() == R.id.action_refresh) {
+            mDashboard.load(true);
+            mAdapter.updateAll();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import java.util.List;
+
+// rows of DashboardActivity, each section is a header followed by the earthquakes of its query
+// sections change one at a time, only the rows of the changed section are notified
+public class DashboardAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    private static final int VIEW_TYPE_HEADER = 0;
+    private static final int VIEW_TYPE_EARTHQUAKE = 1;
+
+    // context used for inflation and resources
+    private final Context mContext;
+
+    private final List<EarthquakeDashboard.Section> mSections;
+
+    // earthquakes bound for every section, replaced section by section on the UI thread
+    private final List<Earthquake>[] mEarthquakes;
+
+    private EarthquakeAdapter.OnItemClickListener mOnItemClickListener;
+
+    // fallback formatter for earthquakes without a display model
+    private EarthquakeFormatter mFormatter;
+
+    @SuppressWarnings("unchecked")
+    public DashboardAdapter(Context context, List<EarthquakeDashboard.Section> sections) {
+
+        mContext = context;
+        mSections = sections;
+        mEarthquakes = new List[sections.size()];
+        for (int i = 0; i < sections.size(); i++) {
+            mEarthquakes[i] = sections.get(i).getEarthquakes();
+        }
+    }
+
+    public void setOnItemClickListener(EarthquakeAdapter.OnItemClickListener listener) {
+        mOnItemClickListener = listener;
+    }
+
+    // rebind one section after its query completed, the other sections keep their rows and scroll position
+    public void updateSection(int index) {
+
+        int start = getSectionStart(index);
+        int oldCount = mEarthquakes[index].size();
+        mEarthquakes[index] = mSections.get(index).getEarthquakes();
+        int newCount = mEarthquakes[index].size();
+
+        // the header shows the state of the query
+        notifyItemChanged(start);
+        notifyItemRangeChanged(start + 1, Math.min(oldCount, newCount));
+        if (newCount > oldCount) {
+            notifyItemRangeInserted(start + 1 + oldCount, newCount - oldCount);
+        } else if (newCount < oldCount) {
+            notifyItemRangeRemoved(start + 1 + newCount, oldCount - newCount);
+        }
+    }
+
+    // rebind every section, for results that arrived while the activity was stopped
+    public void updateAll() {
+
+        for (int i = 0; i < mSections.size(); i++) {
+            mEarthquakes[i] = mSections.get(i).getEarthquakes();
+        }
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemCount() {
+
+        int count = 0;
+        for (List<Earthquake> earthquakes : mEarthquakes) {
+            count += 1 + earthquakes.size();
+        }
+        return count;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return getSectionStart(getSectionIndex(position)) == position ? VIEW_TYPE_HEADER : VIEW_TYPE_EARTHQUAKE;
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+
+        LayoutInflater inflater = LayoutInflater.from(mContext);
+        if (viewType == VIEW_TYPE_HEADER) {
+            return new HeaderViewHolder(inflater.inflate(R.layout.dashboard_section_header, parent, false));
+        }
+
+        View listItemView = inflater.inflate(R.layout.list_item, parent, false);
+        final EarthquakeAdapter.EarthquakeViewHolder holder = new EarthquakeAdapter.EarthquakeViewHolder(listItemView);
+
+        // click opens the details, like a row of the main list
+        listItemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+
+                // the row may be animating out of the list
+                int position = holder.getAdapterPosition();
+                if (mOnItemClickListener != null && position != RecyclerView.NO_POSITION) {
+                    mOnItemClickListener.onItemClick(getEarthquake(position));
+                }
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+
+        if (holder instanceof HeaderViewHolder) {
+            int index = getSectionIndex(position);
+            EarthquakeDashboard.Section section = mSections.get(index);
+            HeaderViewHolder header = (HeaderViewHolder) holder;
+            header.titleTextView.setText(section.getTitle());
+            header.statusTextView.setText(getStatus(section, mEarthquakes[index].size()));
+            return;
+        }
+
+        // earthquakes are formatted on the query thread, those from elsewhere on first bind
+        Earthquake earthquake = getEarthquake(position);
+        EarthquakeDisplay display = earthquake.getDisplay();
+        if (display == null) {
+            if (mFormatter == null) {
+                mFormatter = EarthquakeAdapter.createFormatter(mContext);
+            }
+            display = mFormatter.format(earthquake);
+            earthquake.setDisplay(display);
+        }
+        EarthquakeAdapter.bind((EarthquakeAdapter.EarthquakeViewHolder) holder, display);
+    }
+
+    // state of the query next to the section title, empty once rows are shown
+    private String getStatus(EarthquakeDashboard.Section section, int rows) {
+
+        if (section.isLoading()) {
+            return mContext.getString(R.string.dashboard_loading);
+        }
+        if (section.isFailed()) {
+            return mContext.getString(R.string.dashboard_failed);
+        }
+        return rows == 0 ? mContext.getString(R.string.no_earthquakes_found) : "";
+    }
+
+    // section containing this adapter position, sections are few so a linear walk is enough
+    private int getSectionIndex(int position) {
+
+        int start = 0;
+        for (int i = 0; i < mEarthquakes.length; i++) {
+            start += 1 + mEarthquakes[i].size();
+            if (position < start) {
+                return i;
+            }
+        }
+        throw new IndexOutOfBoundsException("Position " + position + ", count " + start);
+    }
+
+    // adapter position of the header of a section
+    private int getSectionStart(int index) {
+
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            start += 1 + mEarthquakes[i].size();
+        }
+        return start;
+    }
+
+    private Earthquake getEarthquake(int position) {
+
+        int index = getSectionIndex(position);
+        return mEarthquakes[index].get(position - getSectionStart(index) - 1);
+    }
+
+    // view references of a section header
+    static class HeaderViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView titleTextView;
+        final TextView statusTextView;
+
+        HeaderViewHolder(View itemView) {
+
+            super(itemView);
+            titleTextView = (TextView) itemView.findViewById(R.id.section_title);
+            statusTextView = (TextView) itemView.findViewById(R.id.section_status);
+        }
+    }
+
+}
@@ -3,6 +3,9 @@ package com.example.android.quakereport;
 // custom Earthquake object represents metadata for an given earthquake event
 public class Earthquake {
 
+    // unique USGS event id, for example "us1000h3p4"
+    private String mId;
+
     // magnitude
     private double mMagnitude;
 
@@ -12,15 +15,47 @@ public class Earthquake {
     // time in Unix epoch milliseconds
     private long mTime;
 
+    // time of the most recent update to this event in Unix epoch milliseconds
+    private long mUpdated;
+
     // url for specific USGS event page
     private String mUrl;
 
+    // epicenter in degrees and hypocenter depth in kilometers, NaN when the feed has no geometry
+    private double mLatitude;
+    private double mLongitude;
+    private double mDepth;
+
+    // formatted row values, attached on the loader thread by EarthquakeFormatter
+    private EarthquakeDisplay mDisplay;
+
     // constructor
     public Earthquake(double magnitude, String location, long time, String url) {
+        this(null, magnitude, location, time, time, url);
+    }
+
+    // constructor including the USGS event id and last update time
+    public Earthquake(String id, double magnitude, String location, long time, long updated, String url) {
+        this(id, magnitude, location, time, updated, url, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    // constructor including the coordinates of the event
+    public Earthquake(String id, double magnitude, String location, long time, long updated, String url,
+                      double latitude, double longitude, double depth) {
+        mId = id;
         mMagnitude = magnitude;
         mLocation = location;
         mTime = time;
+        mUpdated = updated;
         mUrl = url;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mDepth = depth;
+    }
+
+    // gets USGS event id, null if unknown
+    public String getId() {
+        return mId;
     }
 
     // gets magnitude
@@ -36,18 +71,58 @@ public class Earthquake {
         return mTime;
     }
 
+    // gets last update time
+    public long getUpdated() {
+        return mUpdated;
+    }
+
     // gets url
     public String getUrl() {
         return mUrl;
     }
 
+    // gets latitude in degrees, NaN if unknown
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    // gets longitude in degrees, NaN if unknown
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    // gets depth in kilometers, NaN if unknown
+    public double getDepth() {
+        return mDepth;
+    }
+
+    // true if the epicenter is known
+    public boolean hasCoordinates() {
+        return !Double.isNaN(mLatitude) && !Double.isNaN(mLongitude);
+    }
+
+    // gets formatted row values, null until EarthquakeFormatter has run
+    public EarthquakeDisplay getDisplay() {
+        return mDisplay;
+    }
+
+    // sets formatted row values
+    public void setDisplay(EarthquakeDisplay display) {
+        mDisplay = display;
+    }
+
     @Override
     public String toString() {
         return "Earthquake{" +
-                "mMagnitude ='" + mMagnitude + '\'' +
+                "mId ='" + mId + '\'' +
+                ", mMagnitude ='" + mMagnitude + '\'' +
                 ", mLocation ='" + mLocation + '\'' +
                 ", mTime =" + mTime + '\'' +
-                ", mUrl =" + mUrl +
+                ", mUpdated =" + mUpdated + '\'' +
+                ", mUrl =" + mUrl + '\'' +
+                ", mLatitude =" + mLatitude + '\'' +
+                ", mLongitude =" + mLongitude + '\'' +
+                ", mDepth =" + mDepth +
                 '}';
     }
 
@@ -2,40 +2,61 @@ package com.example.android.quakereport;
 
 import android.app.LoaderManager;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
-public class EarthquakeActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<Earthquake>> {
+public class EarthquakeActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<List<Earthquake>>, EarthquakeLoader.OnProgressListener,
+        SharedPreferences.OnSharedPreferenceChangeListener, LiveFeed.OnPatchListener,
+        EarthquakePager.OnPageLoadedListener {
 
     // simple string tag for log messages
     public static final String LOG_TAG = EarthquakeActivity.class.getName();
 
     // URL query returns JSON object representing the most recent earthquakes
-    private static final String USGS_REQUEST_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+    // injected at build time, see app/build.gradle
+    private static final String USGS_REQUEST_URL = BuildConfig.USGS_REQUEST_URL;
 
     // constant value for the ID of the single earthquake loader
     private static final int EARTHQUAKE_LOADER_ID = 0;
 
+    // rows above and below the visible ones whose details are prefetched
+    private static final int PREFETCH_MARGIN = 5;
+
     // define state variables to be initialized in onCreate()
     private EarthquakeAdapter mAdapter;
     private TextView mEmptyTextView;
     private ProgressBar mProgressBar;
+    private LinearLayoutManager mLayoutManager;
+
+    // loads the pages after the first as the list is scrolled, kept across rotation
+    private EarthquakePager mPager;
+
+    // row range whose details were last handed to EarthquakeDetailCache
+    private int mPrefetchFirst = -1;
+    private int mPrefetchLast = -1;
 
     // initialize options menu in Action Bar
     @Override
@@ -43,6 +64,13 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
 
         // inflate menu
         getMenuInflater().inflate(R.menu.main, menu);
+
+        // developer tools are only offered in debug builds
+        menu.findItem(R.id.action_measure_latency).setVisible(BuildConfig.DEBUG);
+        menu.findItem(R.id.action_load_metrics).setVisible(LoadMetrics.isEnabled());
+
+        // live mode needs a push endpoint, which only some builds have
+        menu.findItem(R.id.action_live).setVisible(LiveFeed.isAvailable()).setChecked(isLiveMode());
         return true;
     }
 
@@ -62,10 +90,89 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
             return true;
         }
 
+        // several regions and magnitude bands at once
+        if (id == R.id.action_dashboard) {
+            startActivity(new Intent(this, DashboardActivity.class));
+            return true;
+        }
+
+        // subscribe to or leave the live stream, the choice is kept for the next start
+        if (id == R.id.action_live) {
+            boolean live = !item.isChecked();
+            item.setChecked(live);
+            PreferenceManager.getDefaultSharedPreferences(this).edit()
+                    .putBoolean(getString(R.string.live_mode_key), live).apply();
+            if (live) {
+                LiveFeed.getInstance(this).start(this);
+            } else {
+                LiveFeed.getInstance(this).stop();
+            }
+            return true;
+        }
+
+        // debug only, run the fetch latency harness against the configured endpoint
+        if (id == R.id.action_measure_latency) {
+            measureFetchLatency();
+            return true;
+        }
+
+        // metrics are on, show the load pipeline statistics
+        if (id == R.id.action_load_metrics) {
+            showLoadMetrics();
+            return true;
+        }
+
         // call through to base class to perform the default menu handling
         return super.onOptionsItemSelected(item);
     }
 
+    // run the latency harness on the current query and show the percentiles when it is done
+    private void measureFetchLatency() {
+
+        final String url = buildQueryUrl(this);
+        Toast.makeText(this, R.string.measuring_fetch_latency, Toast.LENGTH_SHORT).show();
+
+        new AsyncTask<Void, Void, FetchLatencyHarness.Result>() {
+
+            @Override
+            protected FetchLatencyHarness.Result doInBackground(Void... params) {
+                return new FetchLatencyHarness(getApplicationContext(), url).run(FetchLatencyHarness.DEFAULT_ITERATIONS);
+            }
+
+            @Override
+            protected void onPostExecute(FetchLatencyHarness.Result result) {
+
+                // the activity may have been closed while measuring
+                if (isFinishing()) {
+                    return;
+                }
+                new AlertDialog.Builder(EarthquakeActivity.this)
+                        .setTitle(R.string.fetch_latency_title)
+                        .setMessage(result.toString())
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
+            }
+
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // rolling statistics of every load stage, the JSON dump goes to the log at the same time
+    private void showLoadMetrics() {
+
+        LoadMetrics.log();
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.load_metrics_title)
+                .setMessage(LoadMetrics.summary())
+                .setPositiveButton(android.R.string.ok, null)
+                .setNeutralButton(R.string.load_metrics_reset, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        LoadMetrics.reset();
+                    }
+                })
+                .show();
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
 
@@ -73,32 +180,78 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
         super.onCreate(savedInstanceState);
         setContentView(R.layout.earthquake_activity);
 
+        // repeated queries are answered from disk, or revalidated instead of downloaded again
+        QueryUtils.installHttpCache(this);
+
+        // the pages loaded before a rotation are displayed again without a request
+        mPager = (EarthquakePager) getLastCustomNonConfigurationInstance();
+        if (mPager == null) {
+            mPager = new EarthquakePager(this);
+        }
+        mPager.setListener(this);
+
         // initialize an empty ArrayList to hold Earthquake objects
         ArrayList<Earthquake> earthquakes = new ArrayList<>();
 
-        // find a reference to the ListView
-        ListView earthquakeListView = (ListView) findViewById(R.id.list);
+        // find a reference to the RecyclerView, rows are laid out as a vertical list
+        RecyclerView earthquakeRecyclerView = (RecyclerView) findViewById(R.id.list);
+        mLayoutManager = new LinearLayoutManager(this);
+        earthquakeRecyclerView.setLayoutManager(mLayoutManager);
+        earthquakeRecyclerView.setHasFixedSize(true);
 
-        // custom adapter populates ListView
+        // custom adapter populates RecyclerView
         mAdapter = new EarthquakeAdapter(this, earthquakes);
-        earthquakeListView.setAdapter(mAdapter);
+        earthquakeRecyclerView.setAdapter(mAdapter);
 
         // define an empty view in the rare case no earthquakes exist for the URL query parameters
+        // RecyclerView has no built in empty view, so watch the adapter for changes in size
+        // new rows can also take the place of visible ones without a scroll, prefetch their details too
         mEmptyTextView = (TextView) findViewById(R.id.empty_list);
-        earthquakeListView.setEmptyView(mEmptyTextView);
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+                prefetchDetails(true);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+                prefetchDetails(true);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+                prefetchDetails(true);
+            }
+        });
+
+        // fetch the details of the rows on screen and just beyond, so a tap opens them without a network wait
+        // also called after a layout that changes the visible rows, for example when a load completes
+        earthquakeRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                prefetchDetails(false);
+                loadNextPage();
+            }
+        });
 
         // define and display ProgressBar
         mProgressBar = (ProgressBar) findViewById(R.id.progress_bar);
 
-        // set an item click listener on the ListView items
-        earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // set an item click listener on the list items
+        mAdapter.setOnItemClickListener(new EarthquakeAdapter.OnItemClickListener() {
 
-            // click opens up USGS page for more detailed information
+            // click opens the in-app details, or the USGS page for an event without an id
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            public void onItemClick(Earthquake currentEarthquake) {
 
-                // get current Earthquake object
-                Earthquake currentEarthquake = mAdapter.getItem(position);
+                if (currentEarthquake.getId() != null) {
+                    startActivity(EarthquakeDetailActivity.newIntent(EarthquakeActivity.this, currentEarthquake));
+                    return;
+                }
 
                 // Uri object to pass into web browser Intent
                 String url = currentEarthquake.getUrl();
@@ -117,31 +270,230 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
 
         });
 
-        // get status of internet connectivity
+        // render the list saved by the last load within the first frame, the loader result replaces it
+        // row by row once it arrives, and offline the snapshot stays on screen
+        List<Earthquake> snapshot = EarthquakeSnapshot.read(this, buildQueryUrl(this));
+        if (!snapshot.isEmpty()) {
+            mAdapter.submitList(snapshot);
+            mProgressBar.setVisibility(View.GONE);
+        }
+
+        // the loader answers from the local store first, kept fresh by EarthquakeSyncService,
+        // so it starts without waiting for a connection and shows stored rows even when offline
+        startEarthquakeLoader(false);
+
+        // explain an empty list while not connected to internet
+        if (!isConnected()) {
+            mEmptyTextView.setText(R.string.no_internet_connection);
+        }
+
+        // background refresh on the interval chosen in SettingsActivity
+        EarthquakeSyncService.schedule(this);
+
+        // a changed minmag or orderby restarts the loader, which answers from the local store first
+        PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(this);
+
+    }
+
+    // get status of internet connectivity
+    private boolean isConnected() {
+
         ConnectivityManager connectivityManager = (ConnectivityManager) getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
         NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
-        boolean isConnected = (activeNetwork != null) && activeNetwork.isConnectedOrConnecting();
+        return (activeNetwork != null) && activeNetwork.isConnectedOrConnecting();
+    }
+
+    // hand the visible rows to the pager while the paged list is displayed, it requests the next page near the end
+    private void loadNextPage() {
 
-        // check status for internet connectivity
-        if (isConnected) {
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION || !(mAdapter.getCurrentList() instanceof EarthquakePages)) {
+            return;
+        }
+        mPager.onScrolled(firstVisible, lastVisible);
+    }
 
-            // initialize a loader manager to handle a background thread
-            LoaderManager loaderManager = getLoaderManager();
+    // called on the UI thread with every page appended to the paged list
+    @Override
+    public void onPageLoaded(EarthquakePages pages, int start, int count) {
+        mAdapter.appendPage(pages, start, count);
+    }
 
-            // automatically calls onCreateLoader()
-            loaderManager.initLoader(EARTHQUAKE_LOADER_ID, null, this);
+    // hand the event ids of the visible rows, then of the rows around them, to EarthquakeDetailCache
+    // force is set when the rows changed without the visible range changing, the range is then
+    // the one of the last layout, close enough for a speculative fetch
+    private void prefetchDetails(boolean force) {
 
+        int count = mAdapter.getItemCount();
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        int lastVisible = Math.min(mLayoutManager.findLastVisibleItemPosition(), count - 1);
+        if (firstVisible == RecyclerView.NO_POSITION || firstVisible > lastVisible) {
+            return;
+        }
+        if (!force && firstVisible == mPrefetchFirst && lastVisible == mPrefetchLast) {
+            return;
         }
-        else { // not connected to internet
+        mPrefetchFirst = firstVisible;
+        mPrefetchLast = lastVisible;
 
-            // hide the progress bar
-            mProgressBar.setVisibility(View.GONE);
+        // visible rows first, then alternating below and above, nearest first
+        List<String> eventIds = new ArrayList<>();
+        for (int position = firstVisible; position <= lastVisible; position++) {
+            eventIds.add(mAdapter.getItem(position).getId());
+        }
+        for (int i = 1; i <= PREFETCH_MARGIN; i++) {
+            if (lastVisible + i < count) {
+                eventIds.add(mAdapter.getItem(lastVisible + i).getId());
+            }
+            if (firstVisible - i >= 0) {
+                eventIds.add(mAdapter.getItem(firstVisible - i).getId());
+            }
+        }
+        EarthquakeDetailCache.getInstance().prefetch(eventIds);
+    }
 
-            // the earthquakes list is empty
-            mEmptyTextView.setText(R.string.no_internet_connection);
+    // show the empty state text only while the list has no rows
+    private void updateEmptyView() {
+        mEmptyTextView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    // initialize (or restart with new query parameters) the earthquake loader
+    private void startEarthquakeLoader(boolean restart) {
+
+        // initialize a loader manager to handle a background thread
+        LoaderManager loaderManager = getLoaderManager();
+
+        Loader<List<Earthquake>> loader;
+        if (restart) {
+            loader = loaderManager.restartLoader(EARTHQUAKE_LOADER_ID, null, this);
+        } else {
+            loader = loaderManager.initLoader(EARTHQUAKE_LOADER_ID, null, this);
+        }
+
+        // progressive loading mode, batches arrive in onEarthquakesLoaded() during the download
+        ((EarthquakeLoader) loader).setOnProgressListener(this);
+    }
+
+    // called when the user changes a setting in SettingsActivity
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+
+        if (key.equals(getString(R.string.settings_min_magnitude_key))
+                || key.equals(getString(R.string.settings_order_by_key))) {
+
+            // rebuild the query url, stored results for it are shown immediately
+            mProgressBar.setVisibility(View.VISIBLE);
+            startEarthquakeLoader(true);
+        } else if (key.equals(getString(R.string.settings_sync_interval_key))) {
+
+            // replace the alarm with one for the new interval, or cancel it
+            EarthquakeSyncService.schedule(this);
+        }
+    }
+
+    @Override
+    protected void onStart() {
+
+        super.onStart();
+
+        // changes pushed while stopped are replayed by the stream, not fetched with the whole list
+        if (isLiveMode()) {
+            LiveFeed.getInstance(this).start(this);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+
+        // live updates are only applied while the list is on screen
+        LiveFeed.getInstance(this).stop();
+
+        // persist the response cache journal so the next cold start can use it
+        QueryUtils.flushHttpCache();
+
+        super.onStop();
+    }
+
+    @Override
+    protected void onDestroy() {
+
+        PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(this);
+
+        // the loader outlives this activity across rotations, do not leak it through the listener
+        Loader<List<Earthquake>> loader = getLoaderManager().getLoader(EARTHQUAKE_LOADER_ID);
+        if (loader != null) {
+            ((EarthquakeLoader) loader).setOnProgressListener(null);
+        }
+
+        mPager.setListener(null);
+
+        // kept across rotation, but not once the activity is gone for good
+        if (isFinishing()) {
+            mPager.close();
+        }
 
+        super.onDestroy();
+    }
+
+    // the pager and its pages survive rotation like the loader result they extend
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return mPager;
+    }
+
+    // true if live mode is available and was turned on
+    private boolean isLiveMode() {
+        return LiveFeed.isAvailable() && PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(getString(R.string.live_mode_key), false);
+    }
+
+    // called on the UI thread with the changes pushed since the last call, at most a few times a second
+    @Override
+    public void onPatch(List<Earthquake> upserts, Set<String> deletedIds) {
+
+        String url = buildQueryUrl(this);
+        EarthquakeQuery query = EarthquakeQuery.fromUrl(url);
+
+        // a revised event that no longer matches the query leaves the list like a deleted one
+        // magnitudes are parsed as floats, so minmag is compared as a float too, see EarthquakeQueryEngine
+        float minMagnitude = (float) query.getMinMagnitude();
+        List<Earthquake> matching = new ArrayList<>(upserts.size());
+        Set<String> removedIds = new HashSet<>(deletedIds);
+        for (Earthquake earthquake : upserts) {
+            if ((float) earthquake.getMagnitude() >= minMagnitude) {
+                matching.add(earthquake);
+            } else {
+                removedIds.add(earthquake.getId());
+            }
         }
 
+        // only the affected rows are inserted, rebound, moved or removed
+        mProgressBar.setVisibility(View.GONE);
+        mAdapter.applyPatch(matching, removedIds,
+                ShardedFetcher.comparatorFor(Uri.parse(url).getQueryParameter("orderby")), query.getLimit());
+
+        // a restarted loader hands back the patched list
+        Loader<List<Earthquake>> loader = getLoaderManager().getLoader(EARTHQUAKE_LOADER_ID);
+        if (loader != null) {
+            ((EarthquakeLoader) loader).replaceResult(new ArrayList<>(mAdapter.getCurrentList()));
+        }
+    }
+
+    // called on the UI thread for each batch parsed while the loader is still downloading
+    @Override
+    public void onEarthquakesLoaded(List<Earthquake> batch, boolean firstBatch) {
+
+        // the list is now showing content, no need for the progress bar
+        mProgressBar.setVisibility(View.GONE);
+
+        // a new load replaces the results of any previous query to USGS database
+        // rows that are already displayed keep their position and are only rebound if revised
+        if (firstBatch) {
+            mAdapter.submitList(batch);
+        } else {
+            mAdapter.appendAll(batch);
+        }
     }
 
     // automatically called when the loader manager determines that a loader with an id of
@@ -149,19 +501,34 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
     @Override
     public Loader<List<Earthquake>> onCreateLoader(int i, Bundle bundle) {
 
+        // query url for the current preferences
+        String urlFromUri = buildQueryUrl(this);
+
+        // pass concatenated URL to new loader
+        EarthquakeLoader loader = new EarthquakeLoader(this, urlFromUri);
+        return loader;
+
+    }
+
+    // build the USGS query url from the user preferences for minimum magnitude and order-by
+    // static so EarthquakeSyncService refreshes exactly the query this activity shows
+    static String buildQueryUrl(Context context) {
+
+        long start = LoadMetrics.start();
+
         // get the hardcoded default preferences
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
 
         // retrieve user preference for minimum magnitude
         // a reference to the default preference is required by getString
-        String minMagnitudeKey = getString(R.string.settings_min_magnitude_key);
-        String minMagnitudeDefaultValue = getString(R.string.settings_min_magnitude_default);
+        String minMagnitudeKey = context.getString(R.string.settings_min_magnitude_key);
+        String minMagnitudeDefaultValue = context.getString(R.string.settings_min_magnitude_default);
         String minMagnitude = sharedPrefs.getString(minMagnitudeKey, minMagnitudeDefaultValue);
 
         // retrieve user preference for order-by
         // a reference to the default preference is required by getString
-        String orderByKey = getString(R.string.settings_order_by_key);
-        String orderByDefaultValue = getString(R.string.settings_order_by_default);
+        String orderByKey = context.getString(R.string.settings_order_by_key);
+        String orderByDefaultValue = context.getString(R.string.settings_order_by_default);
         String orderBy = sharedPrefs.getString(orderByKey , orderByDefaultValue);
 
         // split URL String into constituent parts
@@ -172,40 +539,43 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
 
         // append query parameters, for example "format=geojson"
         uriBuilder.appendQueryParameter("format", "geojson");
-        uriBuilder.appendQueryParameter("limit", "20");
+        uriBuilder.appendQueryParameter("limit", String.valueOf(EarthquakePager.FIRST_PAGE_SIZE));
         uriBuilder.appendQueryParameter("minmag", minMagnitude);
         uriBuilder.appendQueryParameter("orderby", orderBy);
 
         // convert completed URI to String
         // for example "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=10&minmag=minMagnitude&orderby=orderBy"
         String urlFromUri = uriBuilder.toString();
-
-        // pass concatenated URL to new loader
-        EarthquakeLoader loader = new EarthquakeLoader(this, urlFromUri);
-        return loader;
-
+        LoadMetrics.stop(LoadMetrics.URL_BUILD, start);
+        return urlFromUri;
     }
 
     // automatically called when loader background thread completes
     @Override
     public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakes) {
 
-        // clear the adapter of any previous query to USGS database
-        mAdapter.clear();
-
         // hide the progress bar
         mProgressBar.setVisibility(View.GONE);
 
         // check the input exists and is not empty
         if (earthquakes != null && !earthquakes.isEmpty()) {
 
-            // calling addAll method on the adapter automatically triggers the ListView to update
-            mAdapter.addAll(earthquakes);
+            // the final result merges stored and fetched events, it replaces the progressive batches
+            // only the rows that differ are updated, so the scroll position is kept
+            // live mode patches the list in place, otherwise it is the first page of an endless list
+            if (isLiveMode()) {
+                mAdapter.submitList(earthquakes);
+            } else {
+                mAdapter.submitList(mPager.reset(buildQueryUrl(this), earthquakes));
+            }
         }
         else {
 
-            // the earthquakes list is empty
-            mEmptyTextView.setText(R.string.no_earthquakes_found);
+            // clear the adapter of any previous query to USGS database
+            mAdapter.clear();
+
+            // the earthquakes list is empty, nothing is stored and nothing could be fetched offline
+            mEmptyTextView.setText(isConnected() ? R.string.no_earthquakes_found : R.string.no_internet_connection);
         }
 
     }
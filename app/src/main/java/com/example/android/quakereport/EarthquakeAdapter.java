@@ -2,167 +2,445 @@ package com.example.android.quakereport;
 
 import android.content.Context;
 import android.graphics.drawable.GradientDrawable;
+import android.os.AsyncTask;
 import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+
+public class EarthquakeAdapter extends RecyclerView.Adapter<EarthquakeAdapter.EarthquakeViewHolder> {
+
+    // magnitude circle colors indexed by the truncated magnitude, the last entry is for 10 and above
+    private static final int[] MAGNITUDE_COLOR_IDS = {
+            R.color.magnitude1, // 0
+            R.color.magnitude1,
+            R.color.magnitude2,
+            R.color.magnitude3,
+            R.color.magnitude4,
+            R.color.magnitude5,
+            R.color.magnitude6,
+            R.color.magnitude7,
+            R.color.magnitude8,
+            R.color.magnitude9,
+            R.color.magnitude10plus };
+
+    // receives taps on a list item
+    public interface OnItemClickListener {
+        void onItemClick(Earthquake earthquake);
+    }
+
+    // context used for inflation and resources
+    private final Context mContext;
+
+    // earthquakes currently bound to the RecyclerView, only modified on the UI thread
+    private List<Earthquake> mEarthquakes = new ArrayList<>();
+
+    // latest list handed to submitList() or appendAll(), becomes mEarthquakes once its diff is applied
+    private List<Earthquake> mTargetEarthquakes = mEarthquakes;
 
+    // incremented for every submitted list so that a superseded diff is never applied
+    private int mGeneration;
 
-public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
+    // true while a diff is being calculated in the background
+    private boolean mDiffPending;
 
-    // regular expression used to split location string
-    private static final String LOCATION_SEPARATOR = " of ";
+    // columnar list built by appendAll() while it is the latest list, the only EarthquakeList this adapter
+    // appends to, one handed to submitList() may be shared with the loader
+    private EarthquakeList mAppendable;
+
+    private OnItemClickListener mOnItemClickListener;
+
+    // fallback formatter for earthquakes without a display model
+    private EarthquakeFormatter mFormatter;
 
     // constructor
     public EarthquakeAdapter(Context context, ArrayList<Earthquake> earthquakes) {
 
-        // call superclass ArrayAdapter constructor
-        // second argument for populating a single TextView (the default for ArrayAdapter)
-        // since a custom layout is inflated in getView() this second argument is arbitrary, for initialization only
-        super(context, 0, earthquakes);
+        mContext = context;
+        mEarthquakes.addAll(earthquakes);
+    }
 
+    public void setOnItemClickListener(OnItemClickListener listener) {
+        mOnItemClickListener = listener;
+    }
+
+    // get the Earthquake object at this position in the displayed list
+    public Earthquake getItem(int position) {
+        return mEarthquakes.get(position);
     }
 
-    // must override to inflate anything other than the default single TextView expected by ArrayAdapter
-    // parent is the ListView in earthquake_activity
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
+    public int getItemCount() {
+        return mEarthquakes.size();
+    }
 
-        // rename input argument for clarity
-        View listItemView = convertView;
+    // replace the displayed list, only rows that actually differ are rebound
+    // the diff is calculated off the UI thread and applied once it is ready
+    public void submitList(List<Earthquake> earthquakes) {
 
-        // if the passed view does not exist (therefore it is not being recycled) then inflate it from list_item
-        if(listItemView  == null) {
-            listItemView  = LayoutInflater.from(getContext()).inflate(
-                    R.layout.list_item, parent, false);
+        final int generation = ++mGeneration;
+
+        // an EarthquakeList or EarthquakePages is kept as is, copying it would defeat its compact storage
+        final List<Earthquake> newEarthquakes = earthquakes instanceof EarthquakeList
+                || earthquakes instanceof EarthquakePages ? earthquakes : new ArrayList<>(earthquakes);
+        mTargetEarthquakes = newEarthquakes;
+        if (newEarthquakes != mAppendable) {
+            mAppendable = null;
         }
 
-        // get the Earthquake object at this position in the ArrayList
-        Earthquake currentEarthquake = getItem(position);
+        // trivial cases need no diff and are applied right away
+        if (mEarthquakes.isEmpty() || newEarthquakes.isEmpty()) {
+            mDiffPending = false;
+            int oldCount = mEarthquakes.size();
+            mEarthquakes = newEarthquakes;
+            if (oldCount > 0) {
+                notifyItemRangeRemoved(0, oldCount);
+            }
+            if (!newEarthquakes.isEmpty()) {
+                notifyItemRangeInserted(0, newEarthquakes.size());
+            }
+            return;
+        }
+
+        // a paged list with released pages is replaced without a diff, reading every row of it
+        // would decode all of them back onto the heap, the visible rows are rebound either way
+        if (hasReleasedPages(mEarthquakes) || hasReleasedPages(newEarthquakes)) {
+            mDiffPending = false;
+            mEarthquakes = newEarthquakes;
+            notifyDataSetChanged();
+            return;
+        }
 
-        // get TextView references from list_item
-        TextView magnitudeTextView = (TextView) listItemView.findViewById(R.id.magnitude);
-        TextView locationOffsetTextView = (TextView) listItemView.findViewById(R.id.location_offset);
-        TextView locationPrimaryTextView = (TextView) listItemView.findViewById(R.id.location_primary);
-        TextView dateTextView = (TextView) listItemView.findViewById(R.id.date);
-        TextView timeTextView = (TextView) listItemView.findViewById(R.id.time);
+        // the displayed list is only replaced on the UI thread, so this reference stays valid for the diff
+        // a paged list, or one built by appendAll(), grows on the UI thread while the diff runs,
+        // it is diffed as it is now, see fixedView()
+        final List<Earthquake> oldEarthquakes = fixedView(mEarthquakes);
+        final List<Earthquake> diffedEarthquakes = fixedView(newEarthquakes);
+        mDiffPending = true;
+
+        new AsyncTask<Void, Void, EarthquakeDiff>() {
+
+            @Override
+            protected EarthquakeDiff doInBackground(Void... params) {
+                return EarthquakeDiff.calculate(oldEarthquakes, diffedEarthquakes);
+            }
+
+            @Override
+            protected void onPostExecute(EarthquakeDiff diff) {
+
+                // a newer list was submitted in the meantime, its own diff will be applied instead
+                if (generation != mGeneration) {
+                    return;
+                }
+                mDiffPending = false;
+
+                // rows appended to the displayed list since its view was taken are not part of the diff
+                int appended = mEarthquakes.size() - oldEarthquakes.size();
+                if (appended > 0) {
+                    notifyItemRangeRemoved(oldEarthquakes.size(), appended);
+                }
+                mEarthquakes = newEarthquakes;
+                diff.dispatchUpdatesTo(EarthquakeAdapter.this);
+
+                // and rows appended to the new list since its view was taken are inserted after it
+                int grown = newEarthquakes.size() - diffedEarthquakes.size();
+                if (grown > 0) {
+                    notifyItemRangeInserted(diffedEarthquakes.size(), grown);
+                }
+            }
+
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
 
-        // get magnitude from the current Earthquake object and set to textview
-        double magnitude = currentEarthquake.getMagnitude();
-        magnitudeTextView.setText(formatMagnitude(magnitude)); // helper method coverts to time
+    // add earthquakes to the end of the list with a single range notification
+    // a list that grows past EarthquakeList.COLUMNAR_THRESHOLD moves into an EarthquakeList once and grows
+    // in its columns from then on, so a long progressive load is not held as one object per row
+    public void appendAll(List<Earthquake> earthquakes) {
+
+        // while a diff is pending the appended rows are added to the list being diffed,
+        // in place if it was built here, its diff only covers the rows it had when it started
+        if (mDiffPending) {
+            if (mTargetEarthquakes == mAppendable) {
+                mAppendable.addAll(earthquakes);
+            } else {
+                submitList(combine(mTargetEarthquakes, earthquakes));
+            }
+            return;
+        }
 
-        // set the proper background color on the magnitude circle.
-        // fetch the background from the TextView, which is a GradientDrawable.
-        GradientDrawable magnitudeCircle = (GradientDrawable) magnitudeTextView.getBackground();
+        // a short ArrayList or a list built here grows in place, anything else is first copied,
+        // the rows already shown stay the same, only their storage changes
+        int start = mEarthquakes.size();
+        if (mEarthquakes == mAppendable || (mEarthquakes instanceof ArrayList
+                && start + earthquakes.size() <= EarthquakeList.COLUMNAR_THRESHOLD)) {
+            mEarthquakes.addAll(earthquakes);
+        } else {
+            mEarthquakes = combine(mEarthquakes, earthquakes);
+            mTargetEarthquakes = mEarthquakes;
+        }
+        notifyItemRangeInserted(start, earthquakes.size());
+    }
 
-        // Get the appropriate background color based on the current earthquake magnitude
-        int magnitudeColor = getMagnitudeColor(currentEarthquake.getMagnitude());
+    // the list followed by the appended rows, as a new list this adapter may append to
+    // a long one is built as an EarthquakeList, which then becomes mAppendable
+    private List<Earthquake> combine(List<Earthquake> earthquakes, List<Earthquake> appended) {
+
+        int size = earthquakes.size() + appended.size();
+        List<Earthquake> combined;
+        if (size > EarthquakeList.COLUMNAR_THRESHOLD) {
+            mAppendable = new EarthquakeList(size);
+            combined = mAppendable;
+        } else {
+            mAppendable = null;
+            combined = new ArrayList<>(size);
+        }
+        combined.addAll(earthquakes);
+        combined.addAll(appended);
+        return combined;
+    }
 
-        // Set the color on the magnitude circle
-        magnitudeCircle.setColor(magnitudeColor);
+    // rows were appended to the paged list, notified as a single range when it is the displayed list
+    // a pending diff works on a copy of the pages and accounts for rows appended meanwhile once applied
+    public void appendPage(EarthquakePages pages, int start, int count) {
 
-        // split the location string into two parts for UI formatting
-        // ex: "88km N of Yelizovo, Russia", therefore split String on word " of "
-        String location = currentEarthquake.getLocation();
-        String[] locationSplit = location.split(LOCATION_SEPARATOR); // LOCATION_SEPARATOR = " of "
+        if (mEarthquakes == pages) {
+            notifyItemRangeInserted(start, count);
+        }
+    }
 
-        // define the two parts of location string
-        String locationOffset;
-        String locationPrimary;
+    private static boolean hasReleasedPages(List<Earthquake> earthquakes) {
+        return earthquakes instanceof EarthquakePages && ((EarthquakePages) earthquakes).hasReleasedPages();
+    }
+
+    // rows of a growing list as they are now, other lists do not change while a diff runs
+    // a paged list is copied, an EarthquakeList is viewed up to its current size, appending to it
+    // leaves such a view valid, see EarthquakeList
+    private static List<Earthquake> fixedView(List<Earthquake> earthquakes) {
 
-        // not all location strings contain the offset portion
-        if (location.contains(LOCATION_SEPARATOR)) {
-            locationOffset = locationSplit[0] + LOCATION_SEPARATOR; // super simple string concatenation with +
-            locationPrimary = locationSplit[1];
+        if (earthquakes instanceof EarthquakePages) {
+            return new ArrayList<>(earthquakes);
         }
-        else {
-            locationOffset = getContext().getString(R.string.near_the);
-            locationPrimary = locationSplit[0];
+        if (earthquakes instanceof EarthquakeList) {
+            return earthquakes.subList(0, earthquakes.size());
         }
+        return earthquakes;
+    }
 
-        locationOffsetTextView.setText(locationOffset);
-        locationPrimaryTextView.setText(locationPrimary);
+    // apply live changes by event id, each row is inserted, rebound, moved or removed on its own
+    // upserts go to their position in the given order, and rows beyond the limit (if not 0) are dropped
+    public void applyPatch(List<Earthquake> upserts, Set<String> deletedIds, Comparator<Earthquake> order, int limit) {
 
-        // convert Unix epoch time to standard date and time format
-        Date dateObject = new Date(currentEarthquake.getTime()); // epoch time
-        dateTextView.setText(formatDate(dateObject)); // helper method converts to date
-        timeTextView.setText(formatTime(dateObject)); // helper method coverts to time
+        // while a diff is pending the patch is applied to the list being diffed
+        if (mDiffPending) {
+            List<Earthquake> patched = new ArrayList<>(mTargetEarthquakes);
+            patch(patched, upserts, deletedIds, order, limit, false);
+            submitList(patched);
+            return;
+        }
 
-        // return the inflated view to fragment
-        return listItemView;
+        // an append-only EarthquakeList or EarthquakePages cannot change, switch to a mutable copy
+        if (!(mEarthquakes instanceof ArrayList)) {
+            mEarthquakes = new ArrayList<>(mEarthquakes);
+            mTargetEarthquakes = mEarthquakes;
+            mAppendable = null;
+        }
+        patch(mEarthquakes, upserts, deletedIds, order, limit, true);
+    }
 
+    // the displayed list, or the one about to be displayed once its diff is applied, do not modify it
+    public List<Earthquake> getCurrentList() {
+        return mTargetEarthquakes;
     }
 
-    // simple helper method coverts time epoch to standard date
-    private String formatDate(Date dateObject) {
+    // patch the list in place, notifying this adapter of every step when notify is set
+    private void patch(List<Earthquake> earthquakes, List<Earthquake> upserts, Set<String> deletedIds,
+                       Comparator<Earthquake> order, int limit, boolean notify) {
+
+        // deletions first, back to front so the positions still to be visited stay valid
+        if (!deletedIds.isEmpty()) {
+            for (int i = earthquakes.size() - 1; i >= 0; i--) {
+                if (deletedIds.contains(earthquakes.get(i).getId())) {
+                    earthquakes.remove(i);
+                    if (notify) {
+                        notifyItemRemoved(i);
+                    }
+                }
+            }
+        }
 
+        for (Earthquake earthquake : upserts) {
+
+            // the row of the event if it is already displayed
+            int oldPosition = -1;
+            for (int i = 0; i < earthquakes.size(); i++) {
+                if (earthquake.getId().equals(earthquakes.get(i).getId())) {
+                    oldPosition = i;
+                    break;
+                }
+            }
+            if (oldPosition >= 0) {
+                earthquakes.remove(oldPosition);
+            }
+
+            // after every row that sorts before or level with it
+            int position = Collections.binarySearch(earthquakes, earthquake, order);
+            position = position < 0 ? -position - 1 : position + 1;
+            while (position < earthquakes.size() && order.compare(earthquakes.get(position), earthquake) == 0) {
+                position++;
+            }
+
+            // beyond the limit the event is not shown, or no longer shown
+            if (limit > 0 && position >= limit) {
+                if (oldPosition >= 0 && notify) {
+                    notifyItemRemoved(oldPosition);
+                }
+                continue;
+            }
+
+            earthquakes.add(position, earthquake);
+            if (!notify) {
+                continue;
+            }
+            if (oldPosition < 0) {
+                notifyItemInserted(position);
+            } else {
+                if (oldPosition != position) {
+                    notifyItemMoved(oldPosition, position);
+                }
+                notifyItemChanged(position);
+            }
+        }
 
-        SimpleDateFormat dateFormatter = new SimpleDateFormat("LLL dd, yyyy");
-        return dateFormatter.format(dateObject);
+        // inserted rows push the last ones out
+        if (limit > 0 && earthquakes.size() > limit) {
+            int removed = earthquakes.size() - limit;
+            earthquakes.subList(limit, earthquakes.size()).clear();
+            if (notify) {
+                notifyItemRangeRemoved(limit, removed);
+            }
+        }
+    }
 
+    // remove every row
+    public void clear() {
+        submitList(new ArrayList<Earthquake>());
     }
 
-    // simple helper method coverts time epoch to standard time
-    private String formatTime(Date dateObject) {
+    // view references of one list item, looked up once when the row is inflated
+    static class EarthquakeViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView magnitudeTextView;
+        final GradientDrawable magnitudeCircle;
+        final TextView locationOffsetTextView;
+        final TextView locationPrimaryTextView;
+        final TextView dateTextView;
+        final TextView timeTextView;
 
-        SimpleDateFormat timeFormatter = new SimpleDateFormat("h:mm a");
-        return timeFormatter.format(dateObject);
+        EarthquakeViewHolder(View itemView) {
 
+            super(itemView);
+
+            // get TextView references from list_item
+            magnitudeTextView = (TextView) itemView.findViewById(R.id.magnitude);
+            locationOffsetTextView = (TextView) itemView.findViewById(R.id.location_offset);
+            locationPrimaryTextView = (TextView) itemView.findViewById(R.id.location_primary);
+            dateTextView = (TextView) itemView.findViewById(R.id.date);
+            timeTextView = (TextView) itemView.findViewById(R.id.time);
+
+            // the background of the magnitude TextView is a GradientDrawable
+            magnitudeCircle = (GradientDrawable) magnitudeTextView.getBackground();
+        }
     }
 
-    // simple helper method coverts double to String of the form "0.0"
-    private String formatMagnitude(double magnitude) {
+    // inflate list_item only when RecyclerView has no recycled row to reuse
+    // parent is the RecyclerView in earthquake_activity
+    @Override
+    public EarthquakeViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+
+        View listItemView = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        final EarthquakeViewHolder holder = new EarthquakeViewHolder(listItemView);
+
+        // click opens up USGS page for more detailed information
+        listItemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+
+                // the row may be animating out of the list
+                int position = holder.getAdapterPosition();
+                if (mOnItemClickListener != null && position != RecyclerView.NO_POSITION) {
+                    mOnItemClickListener.onItemClick(mEarthquakes.get(position));
+                }
+            }
+        });
+
+        return holder;
+    }
+
+    // bind the Earthquake object at this position to the cached views of a row
+    // every value was formatted on the loader thread, binding only assigns them
+    @Override
+    public void onBindViewHolder(EarthquakeViewHolder holder, int position) {
 
-        DecimalFormat decimalFormatter = new DecimalFormat("0.0");
-        return decimalFormatter.format(magnitude);
+        long start = LoadMetrics.start();
 
+        // get the Earthquake object at this position in the ArrayList
+        Earthquake currentEarthquake = mEarthquakes.get(position);
+
+        // earthquakes that did not come through a loader are formatted once, on first bind
+        EarthquakeDisplay display = currentEarthquake.getDisplay();
+        if (display == null) {
+            display = getFormatter().format(currentEarthquake);
+            currentEarthquake.setDisplay(display);
+        }
+
+        bind(holder, display);
+
+        LoadMetrics.stop(LoadMetrics.BIND, start);
+    }
+
+    // assign formatted row values to the views of a row, also used for the rows of DashboardAdapter
+    static void bind(EarthquakeViewHolder holder, EarthquakeDisplay display) {
+
+        // set magnitude and the color on the magnitude circle
+        holder.magnitudeTextView.setText(display.magnitude);
+        holder.magnitudeCircle.setColor(display.magnitudeColor);
+
+        // the two parts of location string
+        holder.locationOffsetTextView.setText(display.locationOffset);
+        holder.locationPrimaryTextView.setText(display.locationPrimary);
+
+        // standard date and time format
+        holder.dateTextView.setText(display.date);
+        holder.timeTextView.setText(display.time);
+    }
+
+    // formatter for the UI thread, created on first use
+    private EarthquakeFormatter getFormatter() {
+
+        if (mFormatter == null) {
+            mFormatter = createFormatter(mContext);
+        }
+        return mFormatter;
     }
 
-    // simple helper method applies 1 of 10 colors to magnitude circle background
-    private int getMagnitudeColor(double magnitude) {
+    // formatter producing the row values of this adapter, each thread needs its own instance
+    public static EarthquakeFormatter createFormatter(Context context) {
 
-        int color;
-        switch ((int) magnitude) { // casting double to int simply truncates the decimal off
-            case 0:
-            case 1:
-                color = R.color.magnitude1;
-                break;
-            case 2:
-                color = R.color.magnitude2;
-                break;
-            case 3:
-                color = R.color.magnitude3;
-                break;
-            case 4:
-                color = R.color.magnitude4;
-                break;
-            case 5:
-                color = R.color.magnitude5;
-                break;
-            case 6:
-                color = R.color.magnitude6;
-                break;
-            case 7:
-                color = R.color.magnitude7;
-                break;
-            case 8:
-                color = R.color.magnitude8;
-                break;
-            case 9:
-                color = R.color.magnitude9;
-                break;
-            default:
-                color = R.color.magnitude10plus;
-                break;
+        // resolve the colors once instead of on every bind
+        int[] magnitudeColors = new int[MAGNITUDE_COLOR_IDS.length];
+        for (int i = 0; i < MAGNITUDE_COLOR_IDS.length; i++) {
+            magnitudeColors[i] = ContextCompat.getColor(context, MAGNITUDE_COLOR_IDS[i]);
         }
 
-        return ContextCompat.getColor(getContext(), color);
+        return new EarthquakeFormatter(magnitudeColors, context.getString(R.string.near_the));
     }
 
 }
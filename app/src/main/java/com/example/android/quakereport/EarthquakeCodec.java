@@ -0,0 +1,370 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// compact binary encoding of a batch of earthquakes, used wherever a list is stored or handed on
+// instead of GeoJSON text, decoding is a single pass of varints straight into an EarthquakeList
+// layout, every number a varint unless noted:
+//   magic (4 bytes, "QRKB"), version, count, location dictionary (count, then strings),
+//   then per earthquake: id, magnitude, time, updated, location index, url, latitude, longitude, depth
+// times are zigzag deltas, time against the previous earthquake and updated against its own time,
+// so a list sorted by time costs one or two bytes for each of them
+// magnitudes and coordinates are quantized to fixed steps, far finer than USGS reports them,
+// and stored as zigzag value + 1, with 0 standing for NaN
+// strings are UTF-8 prefixed with length + 1, with 0 standing for null
+// a url of null means the USGS event page of the id, so it is never decoded into a String
+// decode() builds every String up front, decodeLazy() only when a row is read
+public final class EarthquakeCodec {
+
+    // "QRKB", a buffer with any other header is rejected
+    private static final int MAGIC = 0x51524b42;
+
+    // bump on any layout change, older versions are not decoded
+    private static final int VERSION = 1;
+
+    // quantization steps, hundredths of a magnitude unit, 1.1 m in latitude and meters of depth
+    private static final double MAGNITUDE_SCALE = 100;
+    private static final double DEGREE_SCALE = 100000;
+    private static final double DEPTH_SCALE = 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // constructor is deliberately empty as no objects of this class will ever exist
+    private EarthquakeCodec() {}
+
+    // encode the whole list, an EarthquakeList is read column by column without creating views
+    public static byte[] encode(List<Earthquake> earthquakes) {
+
+        EarthquakeList columns = earthquakes instanceof EarthquakeList ? (EarthquakeList) earthquakes : null;
+        int count = earthquakes.size();
+
+        // each distinct location is written once, records refer to it by index
+        Map<String, Integer> locationIndexes = new HashMap<>();
+        int[] recordLocations = new int[count];
+        String[] locations = new String[count];
+        for (int i = 0; i < count; i++) {
+            String location = columns != null ? columns.getLocation(i) : earthquakes.get(i).getLocation();
+            Integer index = locationIndexes.get(location);
+            if (index == null) {
+                index = locationIndexes.size();
+                locationIndexes.put(location, index);
+                locations[index] = location;
+            }
+            recordLocations[i] = index;
+        }
+
+        // roughly 20 bytes per record plus the distinct locations, the buffer grows if needed
+        Output out = new Output(64 + count * 24 + locationIndexes.size() * 32);
+        out.writeInt(MAGIC);
+        out.writeVarint(VERSION);
+        out.writeVarint(count);
+        out.writeVarint(locationIndexes.size());
+        for (int i = 0; i < locationIndexes.size(); i++) {
+            out.writeString(locations[i]);
+        }
+
+        long previousTime = 0;
+        for (int i = 0; i < count; i++) {
+            if (columns != null) {
+                out.writeString(columns.getId(i));
+                out.writeQuantized(columns.getMagnitude(i), MAGNITUDE_SCALE);
+                out.writeVarint(zigzag(columns.getTime(i) - previousTime));
+                out.writeVarint(zigzag(columns.getUpdated(i) - columns.getTime(i)));
+                out.writeVarint(recordLocations[i]);
+                out.writeString(columns.hasEventPageUrl(i) ? null : columns.getUrl(i));
+                out.writeQuantized(columns.getLatitude(i), DEGREE_SCALE);
+                out.writeQuantized(columns.getLongitude(i), DEGREE_SCALE);
+                out.writeQuantized(columns.getDepth(i), DEPTH_SCALE);
+                previousTime = columns.getTime(i);
+            } else {
+                Earthquake earthquake = earthquakes.get(i);
+                out.writeString(earthquake.getId());
+                out.writeQuantized(earthquake.getMagnitude(), MAGNITUDE_SCALE);
+                out.writeVarint(zigzag(earthquake.getTime() - previousTime));
+                out.writeVarint(zigzag(earthquake.getUpdated() - earthquake.getTime()));
+                out.writeVarint(recordLocations[i]);
+                out.writeString(EarthquakeList.isEventPageUrl(earthquake.getId(), earthquake.getUrl())
+                        ? null : earthquake.getUrl());
+                out.writeQuantized(earthquake.getLatitude(), DEGREE_SCALE);
+                out.writeQuantized(earthquake.getLongitude(), DEGREE_SCALE);
+                out.writeQuantized(earthquake.getDepth(), DEPTH_SCALE);
+                previousTime = earthquake.getTime();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static EarthquakeList decode(byte[] bytes) throws IOException {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    // decode one batch starting at the position of the buffer, which is left right after it
+    // a wrong header, an unknown version or a truncated batch throw an IOException
+    public static EarthquakeList decode(ByteBuffer buffer) throws IOException {
+
+        try {
+            readHeader(buffer);
+            int count = readCount(buffer);
+            String[] locations = new String[readCount(buffer)];
+
+            // strings are decoded from a shared scratch array when the buffer has no array of its own
+            byte[] scratch = new byte[64];
+            for (int i = 0; i < locations.length; i++) {
+                locations[i] = readString(buffer, scratch);
+            }
+
+            EarthquakeList.Builder builder = new EarthquakeList.Builder(count);
+            long time = 0;
+            for (int i = 0; i < count; i++) {
+                String id = readString(buffer, scratch);
+                double magnitude = readQuantized(buffer, MAGNITUDE_SCALE);
+                time += unzigzag(readVarint(buffer));
+                long updated = time + unzigzag(readVarint(buffer));
+                String location = locations[readInt(buffer)];
+                String url = readString(buffer, scratch);
+                double latitude = readQuantized(buffer, DEGREE_SCALE);
+                double longitude = readQuantized(buffer, DEGREE_SCALE);
+                double depth = readQuantized(buffer, DEPTH_SCALE);
+                builder.add(id, magnitude, location, time, updated, url, latitude, longitude, depth);
+            }
+            return builder.build();
+
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupt earthquake batch", e);
+        }
+    }
+
+    // lazy record mode, only the numeric columns are decoded, ids, locations and urls are located
+    // by their offsets in the buffer and decoded by the returned list the first time they are read
+    // the buffer must not change while the list is in use, its position is left right after the batch
+    public static EarthquakeList decodeLazy(ByteBuffer buffer) throws IOException {
+
+        try {
+            readHeader(buffer);
+            int count = readCount(buffer);
+            int[] locationOffsets = new int[readCount(buffer)];
+            for (int i = 0; i < locationOffsets.length; i++) {
+                locationOffsets[i] = skipString(buffer);
+            }
+
+            int[] idOffsets = new int[count];
+            int[] urlOffsets = new int[count];
+            int[] locationIndexes = new int[count];
+            float[] magnitudes = new float[count];
+            long[] times = new long[count];
+            long[] updated = new long[count];
+            float[] latitudes = new float[count];
+            float[] longitudes = new float[count];
+            float[] depths = new float[count];
+
+            long time = 0;
+            for (int i = 0; i < count; i++) {
+                idOffsets[i] = skipString(buffer);
+                magnitudes[i] = (float) readQuantized(buffer, MAGNITUDE_SCALE);
+                time += unzigzag(readVarint(buffer));
+                times[i] = time;
+                updated[i] = time + unzigzag(readVarint(buffer));
+                locationIndexes[i] = readInt(buffer);
+                if (locationIndexes[i] >= locationOffsets.length) {
+                    throw new IOException("Location index out of range: " + locationIndexes[i]);
+                }
+                urlOffsets[i] = skipString(buffer);
+                latitudes[i] = (float) readQuantized(buffer, DEGREE_SCALE);
+                longitudes[i] = (float) readQuantized(buffer, DEGREE_SCALE);
+                depths[i] = (float) readQuantized(buffer, DEPTH_SCALE);
+            }
+            return new EarthquakeList(buffer.duplicate(), idOffsets, urlOffsets, locationOffsets, locationIndexes,
+                    magnitudes, times, updated, latitudes, longitudes, depths);
+
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt earthquake batch", e);
+        }
+    }
+
+    // the String encoded at this absolute offset, which decodeLazy() has already checked to be in bounds
+    // the position of the buffer is not used, so lists can decode from any thread under their own lock
+    static String readString(ByteBuffer buffer, int offset) {
+
+        // the length varint, short enough to read byte by byte
+        int length = 0;
+        int index = offset;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(index++);
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        length--;
+        if (length < 0) {
+            return null;
+        }
+
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + index, length, UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(index + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private static void readHeader(ByteBuffer buffer) throws IOException {
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not an earthquake batch");
+        }
+        int version = readInt(buffer);
+        if (version != VERSION) {
+            throw new IOException("Unsupported earthquake batch version " + version);
+        }
+    }
+
+    // step over a String without decoding it, returns the offset it starts at
+    private static int skipString(ByteBuffer buffer) throws IOException {
+
+        int offset = buffer.position();
+        int length = readInt(buffer) - 1;
+        if (length > 0) {
+            buffer.position(buffer.position() + length);
+        }
+        return offset;
+    }
+
+    // maps signed values to unsigned ones so that small negative deltas stay small
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // unsigned LEB128, seven bits per byte, the high bit set on every byte but the last
+    private static long readVarint(ByteBuffer buffer) throws IOException {
+
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    // a varint that must fit a non-negative int, used for counts, lengths and indexes
+    private static int readInt(ByteBuffer buffer) throws IOException {
+
+        long value = readVarint(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Count out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    // every record and string takes at least one byte, so a larger count can only come from a corrupt batch,
+    // checked before any array of that size is allocated
+    private static int readCount(ByteBuffer buffer) throws IOException {
+
+        int count = readInt(buffer);
+        if (count > buffer.remaining()) {
+            throw new IOException("Count larger than the batch: " + count);
+        }
+        return count;
+    }
+
+    private static double readQuantized(ByteBuffer buffer, double scale) throws IOException {
+
+        long value = readVarint(buffer);
+        return value == 0 ? Double.NaN : unzigzag(value - 1) / scale;
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] scratch) throws IOException {
+
+        int length = readInt(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+
+        // heap buffers are decoded in place, direct and memory mapped ones through the scratch array
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+            buffer.get(bytes, 0, length);
+            value = new String(bytes, 0, length, UTF_8);
+        }
+        return value;
+    }
+
+    // growable byte array with the writing half of the encoding
+    private static final class Output {
+
+        private byte[] mBytes;
+        private int mSize;
+
+        Output(int capacity) {
+            mBytes = new byte[capacity];
+        }
+
+        void writeInt(int value) {
+
+            ensureCapacity(4);
+            mBytes[mSize++] = (byte) (value >>> 24);
+            mBytes[mSize++] = (byte) (value >>> 16);
+            mBytes[mSize++] = (byte) (value >>> 8);
+            mBytes[mSize++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+
+            ensureCapacity(10);
+            while ((value & ~0x7fL) != 0) {
+                mBytes[mSize++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBytes[mSize++] = (byte) value;
+        }
+
+        void writeQuantized(double value, double scale) {
+            writeVarint(Double.isNaN(value) ? 0 : zigzag(Math.round(value * scale)) + 1);
+        }
+
+        void writeString(String value) {
+
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length + 1);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, mBytes, mSize, bytes.length);
+            mSize += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mBytes, mSize);
+        }
+
+        private void ensureCapacity(int extra) {
+
+            if (mSize + extra > mBytes.length) {
+                mBytes = Arrays.copyOf(mBytes, Math.max(mBytes.length * 2, mSize + extra));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.example.android.quakereport;
+
+import android.provider.BaseColumns;
+
+// table and column names of the local earthquake database
+public final class EarthquakeContract {
+
+    // constructor is deliberately empty as no objects of this class will ever exist
+    private EarthquakeContract() {}
+
+    // one row per USGS event
+    public static final class EarthquakeEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "earthquakes";
+
+        // unique USGS event id, rows are upserted on this column
+        public static final String COLUMN_EVENT_ID = "event_id";
+
+        // magnitude, indexed for the minimum magnitude preference
+        public static final String COLUMN_MAGNITUDE = "magnitude";
+
+        // location description, for example "88km N of Yelizovo, Russia"
+        public static final String COLUMN_LOCATION = "location";
+
+        // time in Unix epoch milliseconds, indexed for the most recent ordering
+        public static final String COLUMN_TIME = "time";
+
+        // time of the most recent revision in Unix epoch milliseconds
+        public static final String COLUMN_UPDATED = "updated";
+
+        // url for specific USGS event page
+        public static final String COLUMN_URL = "url";
+
+        // epicenter in degrees and depth in kilometers, NULL when the feed has no geometry
+        public static final String COLUMN_LATITUDE = "latitude";
+        public static final String COLUMN_LONGITUDE = "longitude";
+        public static final String COLUMN_DEPTH = "depth";
+    }
+
+    // one row per query url, remembers how far incremental sync has progressed
+    public static final class SyncEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "sync_state";
+
+        // query url without the updatedafter parameter
+        public static final String COLUMN_QUERY_URL = "query_url";
+
+        // newest update time seen in a response to this query, in Unix epoch milliseconds
+        public static final String COLUMN_LAST_UPDATED = "last_updated";
+    }
+
+}
@@ -0,0 +1,276 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// queries of DashboardActivity, several regions and magnitude bands watched at once
+// every section is its own USGS query, they run at the same time on a small shared pool, sections earlier
+// in dashboard_section_queries first, and each result is handed to the listener as soon as it is in,
+// so a slow or failing query only holds up its own section
+// earthquakes returned by more than one section are kept once, in a cache by event id, so overlapping
+// sections share one object and its formatted row values
+// a section the list loaded by EarthquakeLoader already covers, for example a region of it, is answered
+// from memory by EarthquakeQueryEngine instead of USGS
+public final class EarthquakeDashboard {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = EarthquakeDashboard.class.getSimpleName();
+
+    // queries running at the same time, the rest wait in priority order
+    private static final int MAX_PARALLEL_QUERIES = 3;
+
+    // events kept for deduplication, comfortably above the rows of every section together
+    private static final int MAX_CACHED_EVENTS = 1000;
+
+    // receives the result of a section on the UI thread
+    public interface OnSectionLoadedListener {
+        void onSectionLoaded(int index, Section section);
+    }
+
+    // one query of the dashboard and its latest result
+    public static final class Section {
+
+        private final String mTitle;
+        private final String mUrl;
+
+        // null until the first load of the section completes
+        private List<Earthquake> mEarthquakes;
+        private boolean mFailed;
+        private boolean mLoading;
+
+        private Section(String title, String url) {
+            mTitle = title;
+            mUrl = url;
+        }
+
+        public String getTitle() {
+            return mTitle;
+        }
+
+        // rows of the latest successful load, empty while the first load runs
+        public List<Earthquake> getEarthquakes() {
+            return mEarthquakes != null ? mEarthquakes : new ArrayList<Earthquake>();
+        }
+
+        public boolean isLoading() {
+            return mLoading;
+        }
+
+        // true if the latest load failed, the rows of an earlier load are still shown
+        public boolean isFailed() {
+            return mFailed;
+        }
+    }
+
+    // single instance, results survive the activity
+    private static EarthquakeDashboard sInstance;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // sections in display order, only touched on the UI thread
+    private final List<Section> mSections = new ArrayList<>();
+
+    // canonical earthquake of every recently loaded event id, LruCache is thread safe
+    private final LruCache<String, Earthquake> mEvents = new LruCache<>(MAX_CACHED_EVENTS);
+
+    // incremented by every refresh, results of an older refresh are dropped
+    private int mGeneration;
+
+    private OnSectionLoadedListener mListener;
+
+    // queued queries are taken by priority, see SectionQuery.compareTo()
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(MAX_PARALLEL_QUERIES, MAX_PARALLEL_QUERIES,
+            0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "EarthquakeDashboard #" + mCount.incrementAndGet());
+                }
+            });
+
+    // formats rows on the query threads, created by the first query, each thread needs its own instance
+    private final ThreadLocal<EarthquakeFormatter> mFormatters;
+
+    private EarthquakeDashboard(final Context context) {
+
+        // section titles and the query parameters added to the base url, in parallel arrays
+        Resources resources = context.getResources();
+        String[] titles = resources.getStringArray(R.array.dashboard_section_titles);
+        String[] queries = resources.getStringArray(R.array.dashboard_section_queries);
+        for (int i = 0; i < titles.length; i++) {
+            mSections.add(new Section(titles[i], BuildConfig.USGS_REQUEST_URL + "?" + queries[i]));
+        }
+
+        mFormatters = new ThreadLocal<EarthquakeFormatter>() {
+            @Override
+            protected EarthquakeFormatter initialValue() {
+                return EarthquakeAdapter.createFormatter(context);
+            }
+        };
+    }
+
+    // application context is used so that no activity is leaked
+    public static synchronized EarthquakeDashboard getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeDashboard(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    // sections in display order, call on the UI thread
+    public List<Section> getSections() {
+        return mSections;
+    }
+
+    // listener for completed sections, null to stop listening, call on the UI thread
+    public void setListener(OnSectionLoadedListener listener) {
+        mListener = listener;
+    }
+
+    // load every section that has no result yet, or every section when refreshing, call on the UI thread
+    public void load(boolean refresh) {
+
+        // queries still waiting are replaced by the new ones, running ones finish and are ignored
+        if (refresh) {
+            mGeneration++;
+            mExecutor.getQueue().clear();
+        }
+        for (int i = 0; i < mSections.size(); i++) {
+            Section section = mSections.get(i);
+            if (refresh || (section.mEarthquakes == null && !section.mLoading)) {
+                section.mLoading = true;
+                mExecutor.execute(new SectionQuery(i, section.mUrl, mGeneration));
+            }
+        }
+    }
+
+    // the cached earthquake for the same event and revision, so every section holds a single object for it
+    // a new earthquake is formatted before it is published to the cache, a cached one is never written
+    // again, so sections on other query threads only ever read it
+    private Earthquake deduplicate(Earthquake earthquake, EarthquakeFormatter formatter) {
+
+        if (earthquake.getId() != null) {
+            synchronized (mEvents) {
+                Earthquake cached = mEvents.get(earthquake.getId());
+                if (cached != null && cached.getUpdated() >= earthquake.getUpdated()) {
+                    return cached;
+                }
+            }
+        }
+
+        // still private to this query thread, formatted outside the lock
+        earthquake.setDisplay(formatter.format(earthquake));
+        if (earthquake.getId() == null) {
+            return earthquake;
+        }
+
+        // sections finishing at the same time must agree on one object, another one may have won meanwhile
+        synchronized (mEvents) {
+            Earthquake cached = mEvents.get(earthquake.getId());
+            if (cached != null && cached.getUpdated() >= earthquake.getUpdated()) {
+                return cached;
+            }
+            mEvents.put(earthquake.getId(), earthquake);
+            return earthquake;
+        }
+    }
+
+    // rows answered from memory belong to the loaded list, which the UI thread binds and formats,
+    // so a section formats and caches copies of its own, see deduplicate()
+    private static List<Earthquake> copyOf(List<Earthquake> earthquakes) {
+
+        List<Earthquake> copies = new ArrayList<>(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            copies.add(new Earthquake(earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocation(),
+                    earthquake.getTime(), earthquake.getUpdated(), earthquake.getUrl(),
+                    earthquake.getLatitude(), earthquake.getLongitude(), earthquake.getDepth()));
+        }
+        return copies;
+    }
+
+    // the query of one section, lower indexes are taken from the queue first
+    private final class SectionQuery implements Runnable, Comparable<SectionQuery> {
+
+        private final int mIndex;
+        private final String mUrl;
+        private final int mQueryGeneration;
+
+        SectionQuery(int index, String url, int generation) {
+            mIndex = index;
+            mUrl = url;
+            mQueryGeneration = generation;
+        }
+
+        @Override
+        public int compareTo(SectionQuery other) {
+            return mIndex < other.mIndex ? -1 : (mIndex == other.mIndex ? 0 : 1);
+        }
+
+        @Override
+        public void run() {
+
+            List<Earthquake> earthquakes = null;
+            try {
+
+                // the loaded list first, USGS only if it does not cover the section
+                List<Earthquake> fetched = EarthquakeQueryEngine.getInstance().query(EarthquakeQuery.fromUrl(mUrl));
+                if (fetched != null) {
+                    fetched = copyOf(fetched);
+                } else {
+                    fetched = QueryUtils.fetchEarthquakeDataOrThrow(mUrl, null, null);
+                }
+                EarthquakeFormatter formatter = mFormatters.get();
+                earthquakes = new ArrayList<>(fetched.size());
+                for (Earthquake earthquake : fetched) {
+                    earthquakes.add(deduplicate(earthquake, formatter));
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem loading the dashboard section " + Uri.parse(mUrl).getQuery(), e);
+            }
+
+            final List<Earthquake> result = earthquakes;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+
+                    // a refresh started since, its own query will deliver
+                    if (mQueryGeneration != mGeneration) {
+                        return;
+                    }
+                    Section section = mSections.get(mIndex);
+                    section.mLoading = false;
+                    section.mFailed = result == null;
+                    if (result != null) {
+                        section.mEarthquakes = result;
+                    }
+                    if (mListener != null) {
+                        mListener.onSectionLoaded(mIndex, section);
+                    }
+                }
+            });
+        }
+    }
+
+}
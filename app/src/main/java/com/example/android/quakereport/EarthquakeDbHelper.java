@@ -0,0 +1,61 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+import com.example.android.quakereport.EarthquakeContract.SyncEntry;
+
+// creates and upgrades the local earthquake database
+public class EarthquakeDbHelper extends SQLiteOpenHelper {
+
+    // database file name
+    private static final String DATABASE_NAME = "earthquakes.db";
+
+    // increment when the schema changes
+    private static final int DATABASE_VERSION = 3;
+
+    public EarthquakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+
+        // event id is unique so that INSERT OR REPLACE acts as an upsert
+        db.execSQL("CREATE TABLE " + EarthquakeEntry.TABLE_NAME + " ("
+                + EarthquakeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + EarthquakeEntry.COLUMN_EVENT_ID + " TEXT NOT NULL UNIQUE, "
+                + EarthquakeEntry.COLUMN_MAGNITUDE + " REAL NOT NULL, "
+                + EarthquakeEntry.COLUMN_LOCATION + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_UPDATED + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_URL + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_LATITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_LONGITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_DEPTH + " REAL);");
+
+        // the two preference driven queries filter on magnitude and sort on magnitude or time
+        db.execSQL("CREATE INDEX index_magnitude ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_MAGNITUDE + ");");
+        db.execSQL("CREATE INDEX index_time ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_TIME + ");");
+
+        // incremental sync watermark per query url
+        db.execSQL("CREATE TABLE " + SyncEntry.TABLE_NAME + " ("
+                + SyncEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SyncEntry.COLUMN_QUERY_URL + " TEXT NOT NULL UNIQUE, "
+                + SyncEntry.COLUMN_LAST_UPDATED + " INTEGER NOT NULL);");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+
+        // the tables are only a cache of the USGS feed, simply rebuild them
+        // dropping the sync state too forces a full fetch to refill the new columns
+        db.execSQL("DROP TABLE IF EXISTS " + EarthquakeEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + SyncEntry.TABLE_NAME);
+        onCreate(db);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.example.android.quakereport;
+
+// details of a single event from the USGS per-event GeoJSON, shown by EarthquakeDetailActivity
+// immutable, so one instance can be cached and shared between threads
+public class EarthquakeDetail {
+
+    // unique USGS event id, for example "us1000h3p4"
+    private final String mId;
+
+    // headline, for example "M 6.1 - 30km S of Lata, Solomon Islands"
+    private final String mTitle;
+
+    // magnitude and the method it was measured with, for example "mww"
+    private final double mMagnitude;
+    private final String mMagnitudeType;
+
+    // time in Unix epoch milliseconds
+    private final long mTime;
+
+    // url for specific USGS event page
+    private final String mUrl;
+
+    // epicenter in degrees and hypocenter depth in kilometers, NaN when unknown
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mDepth;
+
+    // number of "Did You Feel It?" reports, -1 when none were collected
+    private final int mFelt;
+
+    // maximum Modified Mercalli intensity estimated by ShakeMap, NaN when unknown
+    private final double mIntensity;
+
+    // PAGER alert level "green", "yellow", "orange" or "red", null when there is none
+    private final String mAlert;
+
+    // true if the event occurred in an oceanic region with a tsunami warning center
+    private final boolean mTsunami;
+
+    // "automatic" or "reviewed" by a seismologist
+    private final String mStatus;
+
+    // constructor
+    public EarthquakeDetail(String id, String title, double magnitude, String magnitudeType, long time, String url,
+                            double latitude, double longitude, double depth,
+                            int felt, double intensity, String alert, boolean tsunami, String status) {
+        mId = id;
+        mTitle = title;
+        mMagnitude = magnitude;
+        mMagnitudeType = magnitudeType;
+        mTime = time;
+        mUrl = url;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mDepth = depth;
+        mFelt = felt;
+        mIntensity = intensity;
+        mAlert = alert;
+        mTsunami = tsunami;
+        mStatus = status;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public double getMagnitude() {
+        return mMagnitude;
+    }
+
+    public String getMagnitudeType() {
+        return mMagnitudeType;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public double getDepth() {
+        return mDepth;
+    }
+
+    public int getFelt() {
+        return mFelt;
+    }
+
+    public double getIntensity() {
+        return mIntensity;
+    }
+
+    public String getAlert() {
+        return mAlert;
+    }
+
+    public boolean isTsunami() {
+        return mTsunami;
+    }
+
+    public String getStatus() {
+        return mStatus;
+    }
+
+}
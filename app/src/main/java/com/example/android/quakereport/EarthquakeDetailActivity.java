@@ -0,0 +1,177 @@
+package com.example.android.quakereport;
+
+import android.app.LoaderManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.Loader;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+import java.text.DateFormat;
+import java.util.Date;
+
+// in-app details of one earthquake from the USGS per-event GeoJSON
+// the details of visible rows are prefetched by EarthquakeActivity, so they are usually bound in onCreate()
+// the row values passed in the Intent fill the header until then, and the USGS page is one tap away
+public class EarthquakeDetailActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<EarthquakeDetail> {
+
+    // Intent extras, the values of the tapped row
+    private static final String EXTRA_EVENT_ID = "event_id";
+    private static final String EXTRA_LOCATION = "location";
+    private static final String EXTRA_MAGNITUDE = "magnitude";
+    private static final String EXTRA_TIME = "time";
+    private static final String EXTRA_URL = "url";
+
+    // constant value for the ID of the single detail loader
+    private static final int DETAIL_LOADER_ID = 0;
+
+    // url of the USGS event page, replaced by the one of the details once they arrive
+    private String mUrl;
+
+    private ProgressBar mProgressBar;
+
+    // Intent opening the details of this earthquake, which must have a USGS event id
+    public static Intent newIntent(Context context, Earthquake earthquake) {
+
+        Intent intent = new Intent(context, EarthquakeDetailActivity.class);
+        intent.putExtra(EXTRA_EVENT_ID, earthquake.getId());
+        intent.putExtra(EXTRA_LOCATION, earthquake.getLocation());
+        intent.putExtra(EXTRA_MAGNITUDE, earthquake.getMagnitude());
+        intent.putExtra(EXTRA_TIME, earthquake.getTime());
+        intent.putExtra(EXTRA_URL, earthquake.getUrl());
+        return intent;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+
+        // super class constructor
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.earthquake_detail_activity);
+
+        // Up returns to the list, see the parent declared in the manifest
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+
+        Intent intent = getIntent();
+        String eventId = intent.getStringExtra(EXTRA_EVENT_ID);
+        mUrl = intent.getStringExtra(EXTRA_URL);
+        mProgressBar = (ProgressBar) findViewById(R.id.detail_progress_bar);
+
+        // the row values, shown right away
+        bindHeader(intent.getStringExtra(EXTRA_LOCATION), intent.getLongExtra(EXTRA_TIME, 0));
+        bindMagnitude(intent.getDoubleExtra(EXTRA_MAGNITUDE, 0), null);
+
+        // open the full USGS event page in a web browser
+        findViewById(R.id.detail_open_website).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+
+                // create Intent to open web browser
+                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(mUrl));
+
+                // this conditional prevents the app from crashing by ensuring
+                // a web browser actually exists on the phone
+                if (websiteIntent.resolveActivity(getPackageManager()) != null) {
+                    startActivity(websiteIntent);
+                }
+            }
+        });
+
+        // prefetched details are bound within the first frame, anything else goes through the loader
+        EarthquakeDetail detail = EarthquakeDetailCache.getInstance().peek(eventId);
+        if (detail != null) {
+            bindDetail(detail);
+        } else {
+            Bundle args = new Bundle();
+            args.putString(EXTRA_EVENT_ID, eventId);
+            getLoaderManager().initLoader(DETAIL_LOADER_ID, args, this);
+        }
+    }
+
+    @Override
+    public Loader<EarthquakeDetail> onCreateLoader(int id, Bundle args) {
+        return new EarthquakeDetailLoader(this, args.getString(EXTRA_EVENT_ID));
+    }
+
+    @Override
+    public void onLoadFinished(Loader<EarthquakeDetail> loader, EarthquakeDetail detail) {
+
+        if (detail != null) {
+            bindDetail(detail);
+        } else {
+
+            // offline or the event was deleted, the row values and the website button remain
+            mProgressBar.setVisibility(View.GONE);
+            Toast.makeText(this, R.string.detail_unavailable, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<EarthquakeDetail> loader) {
+        // nothing is held from the loader
+    }
+
+    // title and local date and time of the event
+    private void bindHeader(String title, long time) {
+
+        ((TextView) findViewById(R.id.detail_title)).setText(title);
+        DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
+        ((TextView) findViewById(R.id.detail_time)).setText(dateFormat.format(new Date(time)));
+    }
+
+    private void bindMagnitude(double magnitude, String magnitudeType) {
+
+        String text = magnitudeType == null
+                ? getString(R.string.detail_magnitude, magnitude)
+                : getString(R.string.detail_magnitude_type, magnitude, magnitudeType);
+        showLine(R.id.detail_magnitude, text);
+    }
+
+    // every value of the details, lines without a value stay hidden
+    private void bindDetail(EarthquakeDetail detail) {
+
+        mProgressBar.setVisibility(View.GONE);
+        if (detail.getUrl() != null && !detail.getUrl().isEmpty()) {
+            mUrl = detail.getUrl();
+        }
+
+        bindHeader(detail.getTitle(), detail.getTime());
+        bindMagnitude(detail.getMagnitude(), detail.getMagnitudeType());
+
+        if (!Double.isNaN(detail.getLatitude()) && !Double.isNaN(detail.getLongitude())) {
+            double depth = Double.isNaN(detail.getDepth()) ? 0 : detail.getDepth();
+            showLine(R.id.detail_position, getString(R.string.detail_position,
+                    detail.getLatitude(), detail.getLongitude(), depth));
+        }
+        if (detail.getFelt() >= 0) {
+            showLine(R.id.detail_felt, getString(R.string.detail_felt, detail.getFelt()));
+        }
+        if (!Double.isNaN(detail.getIntensity())) {
+            showLine(R.id.detail_intensity, getString(R.string.detail_intensity, detail.getIntensity()));
+        }
+        if (detail.getAlert() != null) {
+            showLine(R.id.detail_alert, getString(R.string.detail_alert, detail.getAlert()));
+        }
+        if (detail.isTsunami()) {
+            findViewById(R.id.detail_tsunami).setVisibility(View.VISIBLE);
+        }
+        if (detail.getStatus() != null) {
+            showLine(R.id.detail_status, getString(R.string.detail_status, detail.getStatus()));
+        }
+    }
+
+    private void showLine(int viewId, String text) {
+
+        TextView textView = (TextView) findViewById(viewId);
+        textView.setText(text);
+        textView.setVisibility(View.VISIBLE);
+    }
+
+}
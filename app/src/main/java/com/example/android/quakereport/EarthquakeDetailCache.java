@@ -0,0 +1,155 @@
+package com.example.android.quakereport;
+
+import android.os.Process;
+import android.util.LruCache;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+// event details fetched ahead of a tap, so EarthquakeDetailActivity opens without waiting for the network
+// EarthquakeActivity hands over the ids of the visible and nearly visible rows whenever they change,
+// a single background priority thread fetches them in that order, and the results are kept in memory
+// a detail that is already being fetched when it is asked for is waited for, never fetched twice
+public final class EarthquakeDetailCache {
+
+    // details kept in memory, a detail is well under a kilobyte
+    private static final int MAX_DETAILS = 100;
+
+    // single instance shared by the list and the detail screen
+    private static EarthquakeDetailCache sInstance;
+
+    // most recently used details by event id, LruCache is thread safe
+    private final LruCache<String, EarthquakeDetail> mDetails = new LruCache<>(MAX_DETAILS);
+
+    // fetches running right now by event id, guarded by this
+    private final Map<String, FutureTask<EarthquakeDetail>> mInFlight = new HashMap<>();
+
+    // ids still to prefetch in order, replaced by every prefetch() call, guarded by this
+    private ArrayDeque<String> mPending = new ArrayDeque<>();
+
+    // true while the prefetch thread is draining mPending, guarded by this
+    private boolean mDraining;
+
+    // one thread, prefetching is speculative and must not compete with the list load
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "EarthquakeDetailCache");
+        }
+    });
+
+    private EarthquakeDetailCache() {}
+
+    public static synchronized EarthquakeDetailCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new EarthquakeDetailCache();
+        }
+        return sInstance;
+    }
+
+    // the cached detail of an event, or null, safe to call on the UI thread
+    public EarthquakeDetail peek(String eventId) {
+        return mDetails.get(eventId);
+    }
+
+    // the detail of an event, fetched now if it is neither cached nor being fetched, null if the fetch fails
+    // blocks, call from a background thread
+    public EarthquakeDetail get(String eventId) {
+
+        FutureTask<EarthquakeDetail> task;
+        boolean owner = false;
+        synchronized (this) {
+            EarthquakeDetail detail = mDetails.get(eventId);
+            if (detail != null) {
+                return detail;
+            }
+            task = mInFlight.get(eventId);
+            if (task == null) {
+                task = newFetch(eventId);
+                mInFlight.put(eventId, task);
+                owner = true;
+            }
+        }
+
+        // the caller that started the fetch runs it on its own thread, anyone else waits for it
+        if (owner) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // fetch these events in order ahead of a tap, replacing whatever was queued before
+    // rows that scrolled away are no longer worth fetching, so the queue never grows beyond one screen
+    public void prefetch(List<String> eventIds) {
+
+        synchronized (this) {
+            mPending = new ArrayDeque<>(eventIds.size());
+            for (String eventId : eventIds) {
+                if (eventId != null && mDetails.get(eventId) == null && !mInFlight.containsKey(eventId)) {
+                    mPending.add(eventId);
+                }
+            }
+            if (mDraining || mPending.isEmpty()) {
+                return;
+            }
+            mDraining = true;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    String eventId;
+                    synchronized (EarthquakeDetailCache.this) {
+                        eventId = mPending.poll();
+                        if (eventId == null) {
+                            mDraining = false;
+                            return;
+                        }
+                    }
+                    get(eventId);
+                }
+            }
+        });
+    }
+
+    // fetch that caches its result and then leaves the in-flight map
+    private FutureTask<EarthquakeDetail> newFetch(final String eventId) {
+
+        return new FutureTask<>(new Callable<EarthquakeDetail>() {
+            @Override
+            public EarthquakeDetail call() {
+
+                EarthquakeDetail detail = QueryUtils.fetchEarthquakeDetail(eventId);
+                synchronized (EarthquakeDetailCache.this) {
+                    if (detail != null) {
+                        mDetails.put(eventId, detail);
+                    }
+                    mInFlight.remove(eventId);
+                }
+                return detail;
+            }
+        });
+    }
+
+}
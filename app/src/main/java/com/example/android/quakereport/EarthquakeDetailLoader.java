@@ -0,0 +1,48 @@
+package com.example.android.quakereport;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+
+// loads the details of a single event through EarthquakeDetailCache, which usually has them already
+// or joins the prefetch that is still running for them
+public class EarthquakeDetailLoader extends AsyncTaskLoader<EarthquakeDetail> {
+
+    // USGS event id of the detail screen
+    private final String mEventId;
+
+    // last delivered result, returned again without a fetch when the loader restarts
+    private EarthquakeDetail mDetail;
+
+    public EarthquakeDetailLoader(Context context, String eventId) {
+
+        // inherit loader initialization configuration from superclass AsyncTaskLoader
+        super(context);
+        mEventId = eventId;
+    }
+
+    @Override
+    protected void onStartLoading() {
+
+        // hand back the result already held, e.g. after a rotation
+        if (mDetail != null) {
+            deliverResult(mDetail);
+        } else {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public void deliverResult(EarthquakeDetail detail) {
+
+        mDetail = detail;
+        if (isStarted()) {
+            super.deliverResult(detail);
+        }
+    }
+
+    @Override
+    public EarthquakeDetail loadInBackground() {
+        return EarthquakeDetailCache.getInstance().get(mEventId);
+    }
+
+}
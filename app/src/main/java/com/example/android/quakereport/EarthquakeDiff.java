@@ -0,0 +1,200 @@
+package com.example.android.quakereport;
+
+import android.support.v7.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// computes the minimal set of adapter updates that turns one earthquake list into another
+// earthquakes are matched by USGS event id, so a refreshed list only rebinds rows that changed
+// calculate() does not touch any view and is meant to run off the UI thread
+public final class EarthquakeDiff {
+
+    // kinds of update, dispatched in the order they were recorded
+    static final int INSERT = 0;
+    static final int REMOVE = 1;
+    static final int MOVE = 2;
+    static final int CHANGE = 3;
+
+    // recorded updates as {type, position, count or target position}
+    private final List<int[]> mOperations = new ArrayList<>();
+
+    // constructor is private, results are created by calculate()
+    private EarthquakeDiff() {}
+
+    // diff two lists, neither list is modified
+    public static EarthquakeDiff calculate(List<Earthquake> oldList, List<Earthquake> newList) {
+
+        EarthquakeDiff diff = new EarthquakeDiff();
+
+        // keys of every earthquake that will be displayed afterwards
+        Set<String> newKeys = new HashSet<>();
+        for (Earthquake earthquake : newList) {
+            newKeys.add(key(earthquake));
+        }
+
+        // work on a copy that mirrors the adapter contents after each recorded update
+        List<Earthquake> current = new ArrayList<>(oldList);
+
+        // removals first, back to front so the positions still to be visited stay valid
+        for (int i = current.size() - 1; i >= 0; i--) {
+            if (!newKeys.contains(key(current.get(i)))) {
+                current.remove(i);
+                diff.remove(i);
+            }
+        }
+
+        // keys still present, lets inserts skip the scan for a row to move
+        Set<String> currentKeys = new HashSet<>();
+        for (Earthquake earthquake : current) {
+            currentKeys.add(key(earthquake));
+        }
+
+        // walk the new list and bring the row at each position into place
+        for (int i = 0; i < newList.size(); i++) {
+
+            Earthquake target = newList.get(i);
+            String targetKey = key(target);
+
+            // already in place, only rebind when the event was revised
+            if (i < current.size() && key(current.get(i)).equals(targetKey)) {
+                if (!sameContents(current.get(i), target)) {
+                    diff.change(i);
+                }
+                current.set(i, target);
+                continue;
+            }
+
+            // find the row further down and move it up
+            int from = currentKeys.contains(targetKey) ? indexOfKey(current, targetKey, i + 1) : -1;
+            if (from >= 0) {
+                Earthquake moved = current.remove(from);
+                current.add(i, target);
+                diff.move(from, i);
+                if (!sameContents(moved, target)) {
+                    diff.change(i);
+                }
+            } else {
+                current.add(i, target);
+                diff.insert(i);
+            }
+        }
+
+        // rows left over from duplicate keys in the old list
+        if (current.size() > newList.size()) {
+            diff.removeRange(newList.size(), current.size() - newList.size());
+        }
+
+        return diff;
+    }
+
+    // true if the two lists are already identical, nothing needs to be dispatched
+    public boolean isEmpty() {
+        return mOperations.isEmpty();
+    }
+
+    // recorded updates as {type, position, count or target position}, in dispatch order
+    List<int[]> getOperations() {
+        return mOperations;
+    }
+
+    // replay the recorded updates as fine grained notifications, must run on the UI thread
+    // after the adapter has switched to the new list
+    public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+
+        for (int[] operation : mOperations) {
+            switch (operation[0]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(operation[1], operation[2]);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(operation[1], operation[2]);
+                    break;
+                case MOVE:
+                    adapter.notifyItemMoved(operation[1], operation[2]);
+                    break;
+                case CHANGE:
+                    adapter.notifyItemRangeChanged(operation[1], operation[2]);
+                    break;
+            }
+        }
+    }
+
+    // record a single insert, merged with the previous one when the positions are adjacent
+    private void insert(int position) {
+
+        int[] last = last();
+        if (last != null && last[0] == INSERT && last[1] + last[2] == position) {
+            last[2]++;
+        } else {
+            mOperations.add(new int[] { INSERT, position, 1 });
+        }
+    }
+
+    // record a single removal, visited back to front so a merge extends the range downwards
+    private void remove(int position) {
+
+        int[] last = last();
+        if (last != null && last[0] == REMOVE && last[1] == position + 1) {
+            last[1] = position;
+            last[2]++;
+        } else {
+            mOperations.add(new int[] { REMOVE, position, 1 });
+        }
+    }
+
+    private void removeRange(int position, int count) {
+        mOperations.add(new int[] { REMOVE, position, count });
+    }
+
+    private void move(int from, int to) {
+        mOperations.add(new int[] { MOVE, from, to });
+    }
+
+    // record a single change, merged with the previous one when the positions are adjacent
+    private void change(int position) {
+
+        int[] last = last();
+        if (last != null && last[0] == CHANGE && last[1] + last[2] == position) {
+            last[2]++;
+        } else {
+            mOperations.add(new int[] { CHANGE, position, 1 });
+        }
+    }
+
+    private int[] last() {
+        return mOperations.isEmpty() ? null : mOperations.get(mOperations.size() - 1);
+    }
+
+    // position of the first earthquake with the given key at or after start, -1 if none
+    private static int indexOfKey(List<Earthquake> earthquakes, String key, int start) {
+
+        for (int i = start; i < earthquakes.size(); i++) {
+            if (key(earthquakes.get(i)).equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // identity of an earthquake, events without a USGS id fall back to their page url and time
+    private static String key(Earthquake earthquake) {
+
+        if (earthquake.getId() != null) {
+            return earthquake.getId();
+        }
+        return earthquake.getUrl() + "@" + earthquake.getTime();
+    }
+
+    // true if a row bound to one earthquake would look the same bound to the other
+    private static boolean sameContents(Earthquake a, Earthquake b) {
+
+        return a.getMagnitude() == b.getMagnitude()
+                && a.getTime() == b.getTime()
+                && a.getUpdated() == b.getUpdated()
+                && a.getLocation().equals(b.getLocation())
+                && a.getUrl().equals(b.getUrl());
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.example.android.quakereport;
+
+// formatted values of one list row, prepared off the UI thread by EarthquakeFormatter
+// binding a row only assigns these values, nothing is formatted or allocated
+public final class EarthquakeDisplay {
+
+    // magnitude of the form "0.0"
+    public final String magnitude;
+
+    // resolved color of the magnitude circle background
+    public final int magnitudeColor;
+
+    // first part of the location, for example "88km N of" or "Near the"
+    public final String locationOffset;
+
+    // second part of the location, for example "Yelizovo, Russia"
+    public final String locationPrimary;
+
+    // date of the form "Mar 06, 2010"
+    public final String date;
+
+    // time of the form "3:00 PM"
+    public final String time;
+
+    public EarthquakeDisplay(String magnitude, int magnitudeColor, String locationOffset,
+                             String locationPrimary, String date, String time) {
+        this.magnitude = magnitude;
+        this.magnitudeColor = magnitudeColor;
+        this.locationOffset = locationOffset;
+        this.locationPrimary = locationPrimary;
+        this.date = date;
+        this.time = time;
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.example.android.quakereport;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+// builds the EarthquakeDisplay of each earthquake, meant to run on the loader thread
+// the formatters are created once per instance and are not thread safe, use one instance per thread
+public class EarthquakeFormatter {
+
+    // separator used to split location string
+    private static final String LOCATION_SEPARATOR = " of ";
+
+    private final SimpleDateFormat mDateFormatter = new SimpleDateFormat("LLL dd, yyyy");
+    private final SimpleDateFormat mTimeFormatter = new SimpleDateFormat("h:mm a");
+    private final DecimalFormat mMagnitudeFormatter = new DecimalFormat("0.0");
+
+    // reused for every earthquake, SimpleDateFormat only reads it
+    private final Date mDate = new Date();
+
+    // colors resolved once instead of on every bind, indexed by the truncated magnitude
+    // the last entry is used for every larger magnitude
+    private final int[] mMagnitudeColors;
+
+    // shown when the location has no offset portion
+    private final String mNearThe;
+
+    // resources are resolved by the caller, see EarthquakeAdapter.createFormatter()
+    // keeps this class free of Android dependencies so it can be benchmarked on a plain JVM
+    public EarthquakeFormatter(int[] magnitudeColors, String nearThe) {
+        mMagnitudeColors = magnitudeColors.clone();
+        mNearThe = nearThe;
+    }
+
+    // attach a display model to every earthquake of the list that does not have one yet
+    // an EarthquakeList only holds transient views, its display column is filled instead, without views
+    public void formatAll(List<Earthquake> earthquakes) {
+
+        if (earthquakes instanceof EarthquakeList) {
+            EarthquakeList columns = (EarthquakeList) earthquakes;
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.getDisplay(i) == null) {
+                    columns.setDisplay(i, format(columns.getMagnitude(i), columns.getLocation(i), columns.getTime(i)));
+                }
+            }
+            return;
+        }
+
+        for (Earthquake earthquake : earthquakes) {
+            if (earthquake.getDisplay() == null) {
+                earthquake.setDisplay(format(earthquake));
+            }
+        }
+    }
+
+    // build the display model of a single earthquake
+    public EarthquakeDisplay format(Earthquake earthquake) {
+        return format(earthquake.getMagnitude(), earthquake.getLocation(), earthquake.getTime());
+    }
+
+    // the display model from the fields it shows, for rows that are not held as objects
+    public EarthquakeDisplay format(double magnitude, String location, long time) {
+
+        // split the location string into two parts for UI formatting
+        String[] locationParts = splitLocation(location);
+
+        // convert Unix epoch time to standard date and time format
+        mDate.setTime(time);
+
+        return new EarthquakeDisplay(
+                formatMagnitude(magnitude),
+                getMagnitudeColor(magnitude),
+                locationParts[0],
+                locationParts[1],
+                formatDate(mDate),
+                formatTime(mDate));
+    }
+
+    // split a location into its offset and primary parts, in that order
+    // ex: "88km N of Yelizovo, Russia", therefore split String on word " of "
+    public String[] splitLocation(String location) {
+
+        int separatorIndex = location.indexOf(LOCATION_SEPARATOR);
+
+        // not all location strings contain the offset portion
+        if (separatorIndex >= 0) {
+            int primaryStart = separatorIndex + LOCATION_SEPARATOR.length();
+            return new String[] { location.substring(0, primaryStart), location.substring(primaryStart) };
+        }
+        else {
+            return new String[] { mNearThe, location };
+        }
+    }
+
+    // simple helper method coverts time epoch to standard date
+    public String formatDate(Date dateObject) {
+        return mDateFormatter.format(dateObject);
+    }
+
+    // simple helper method coverts time epoch to standard time
+    public String formatTime(Date dateObject) {
+        return mTimeFormatter.format(dateObject);
+    }
+
+    // simple helper method coverts double to String of the form "0.0"
+    public String formatMagnitude(double magnitude) {
+        return mMagnitudeFormatter.format(magnitude);
+    }
+
+    // simple helper method applies 1 of 10 colors to magnitude circle background
+    public int getMagnitudeColor(double magnitude) {
+
+        // casting double to int simply truncates the decimal off
+        int index = (int) magnitude;
+        if (index < 0) {
+            index = 0;
+        }
+        if (index >= mMagnitudeColors.length) {
+            index = mMagnitudeColors.length - 1;
+        }
+        return mMagnitudeColors[index];
+    }
+
+}
@@ -0,0 +1,219 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// spatial index over a loaded list of earthquakes, answers bounding box and nearest-N queries
+// without another USGS request
+// the globe is divided into fixed cells of CELL_DEGREES, every epicenter is stored in the cell it falls in,
+// and the points are kept sorted by cell in flat primitive arrays, so a query only visits the cells
+// it overlaps and never allocates per point
+// the index is immutable and can be shared between threads, build it on a background thread
+public final class EarthquakeGrid {
+
+    // one degree cells, a few dozen cells cover a 300 km radius and 50k events average under one per cell
+    private static final double CELL_DEGREES = 1.0;
+    private static final int ROWS = (int) (180 / CELL_DEGREES);
+    private static final int COLUMNS = (int) (360 / CELL_DEGREES);
+
+    // mean earth radius
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    // kilometers per degree of latitude, and of longitude at the equator
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    private final List<Earthquake> mEarthquakes;
+
+    // first entry of each cell in the arrays below, cell c holds entries mCellStarts[c] to mCellStarts[c + 1]
+    private final int[] mCellStarts = new int[ROWS * COLUMNS + 1];
+
+    // per entry in cell order, the position in mEarthquakes and the epicenter
+    private final int[] mPositions;
+    private final float[] mLatitudes;
+    private final float[] mLongitudes;
+
+    // index every earthquake of the list that has coordinates, the list must not change afterwards
+    public EarthquakeGrid(List<Earthquake> earthquakes) {
+
+        mEarthquakes = earthquakes;
+        int size = earthquakes.size();
+
+        // read the coordinates once, an EarthquakeList is read column by column without creating views
+        EarthquakeList columns = earthquakes instanceof EarthquakeList ? (EarthquakeList) earthquakes : null;
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        int[] cells = new int[size];
+        int indexed = 0;
+        for (int i = 0; i < size; i++) {
+            if (columns != null) {
+                latitudes[i] = columns.getLatitude(i);
+                longitudes[i] = columns.getLongitude(i);
+            } else {
+                Earthquake earthquake = earthquakes.get(i);
+                latitudes[i] = earthquake.getLatitude();
+                longitudes[i] = earthquake.getLongitude();
+            }
+
+            if (Double.isNaN(latitudes[i]) || Double.isNaN(longitudes[i])) {
+                cells[i] = -1;
+            } else {
+                cells[i] = cell(row(latitudes[i]), column(longitudes[i]));
+                mCellStarts[cells[i] + 1]++;
+                indexed++;
+            }
+        }
+
+        // counting sort by cell, counts become start offsets
+        for (int c = 0; c < ROWS * COLUMNS; c++) {
+            mCellStarts[c + 1] += mCellStarts[c];
+        }
+        int[] next = Arrays.copyOf(mCellStarts, ROWS * COLUMNS);
+        mPositions = new int[indexed];
+        mLatitudes = new float[indexed];
+        mLongitudes = new float[indexed];
+        for (int i = 0; i < size; i++) {
+            if (cells[i] >= 0) {
+                int entry = next[cells[i]]++;
+                mPositions[entry] = i;
+                mLatitudes[entry] = (float) latitudes[i];
+                mLongitudes[entry] = (float) longitudes[i];
+            }
+        }
+    }
+
+    // number of earthquakes in the index, those without coordinates are left out
+    public int size() {
+        return mPositions.length;
+    }
+
+    // earthquakes with an epicenter inside the box, in list order
+    // west may be greater than east for a box that crosses the antimeridian
+    public List<Earthquake> queryBoundingBox(double south, double west, double north, double east) {
+
+        int[] positions = queryBoundingBoxPositions(south, west, north, east);
+        List<Earthquake> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(mEarthquakes.get(position));
+        }
+        return result;
+    }
+
+    // positions in the indexed list of the earthquakes inside the box, ascending, see queryBoundingBox()
+    // for callers that keep their own columns by position, such as EarthquakeQueryEngine
+    public int[] queryBoundingBoxPositions(double south, double west, double north, double east) {
+
+        int[] positions = new int[16];
+        int count = 0;
+
+        int firstRow = row(Math.max(south, -90));
+        int lastRow = row(Math.min(north, 90));
+        boolean wraps = west > east;
+
+        for (int row = firstRow; row <= lastRow; row++) {
+
+            // one column range, or two when the box crosses the antimeridian
+            for (int part = 0; part < (wraps ? 2 : 1); part++) {
+                int firstColumn = column(wraps && part == 1 ? -180 : west);
+                int lastColumn = wraps && part == 0 ? COLUMNS - 1 : column(east);
+
+                // cells of one row are contiguous in the entry arrays
+                int start = mCellStarts[cell(row, firstColumn)];
+                int end = mCellStarts[cell(row, lastColumn) + 1];
+                for (int entry = start; entry < end; entry++) {
+                    float latitude = mLatitudes[entry];
+                    float longitude = mLongitudes[entry];
+                    boolean inLongitude = wraps ? (longitude >= west || longitude <= east)
+                            : (longitude >= west && longitude <= east);
+                    if (latitude >= south && latitude <= north && inLongitude) {
+                        if (count == positions.length) {
+                            positions = Arrays.copyOf(positions, count * 2);
+                        }
+                        positions[count++] = mPositions[entry];
+                    }
+                }
+            }
+        }
+
+        Arrays.sort(positions, 0, count);
+        return Arrays.copyOf(positions, count);
+    }
+
+    // up to count earthquakes within maxDistanceKm of the point, nearest first
+    // for example nearest(latitude, longitude, 20, 300) for "quakes within 300 km of me"
+    public List<Earthquake> nearest(double latitude, double longitude, int count, double maxDistanceKm) {
+
+        // candidates packed as distance bits and entry, positive float bits sort like the floats themselves
+        long[] candidates = new long[16];
+        int found = 0;
+
+        // cells of the bounding box around the circle, the whole band of longitudes near a pole
+        double latitudeSpan = maxDistanceKm / KM_PER_DEGREE;
+        double south = latitude - latitudeSpan;
+        double north = latitude + latitudeSpan;
+        double widestLatitude = Math.min(90, Math.max(Math.abs(south), Math.abs(north)));
+        double longitudeSpan = north >= 90 || south <= -90 ? 180
+                : maxDistanceKm / (KM_PER_DEGREE * Math.cos(Math.toRadians(widestLatitude)));
+        int firstRow = row(Math.max(south, -90));
+        int lastRow = row(Math.min(north, 90));
+        int columnSpan = (int) Math.ceil(Math.min(longitudeSpan, 180) / CELL_DEGREES) + 1;
+
+        // columns either side of the center, wrapping across the antimeridian, or every column
+        int firstColumn = column(longitude) - columnSpan;
+        int columnCount = Math.min(2 * columnSpan + 1, COLUMNS);
+
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int i = 0; i < columnCount; i++) {
+                int cell = cell(row, (firstColumn + i + COLUMNS) % COLUMNS);
+                for (int entry = mCellStarts[cell]; entry < mCellStarts[cell + 1]; entry++) {
+                    double distance = distanceKm(latitude, longitude, cosLatitude, mLatitudes[entry], mLongitudes[entry]);
+                    if (distance <= maxDistanceKm) {
+                        if (found == candidates.length) {
+                            candidates = Arrays.copyOf(candidates, found * 2);
+                        }
+                        candidates[found++] = ((long) Float.floatToIntBits((float) distance) << 32) | entry;
+                    }
+                }
+            }
+        }
+
+        Arrays.sort(candidates, 0, found);
+        int resultSize = Math.min(count, found);
+        List<Earthquake> result = new ArrayList<>(resultSize);
+        for (int i = 0; i < resultSize; i++) {
+            result.add(mEarthquakes.get(mPositions[(int) candidates[i]]));
+        }
+        return result;
+    }
+
+    // great circle distance in kilometers between two points in degrees
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        return distanceKm(latitude1, longitude1, Math.cos(Math.toRadians(latitude1)), latitude2, longitude2);
+    }
+
+    // haversine formula, the cosine of the first latitude is passed in because queries reuse it for every point
+    private static double distanceKm(double latitude1, double longitude1, double cosLatitude1,
+                                     double latitude2, double longitude2) {
+
+        double sinHalfLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinHalfLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfLatitude * sinHalfLatitude
+                + cosLatitude1 * Math.cos(Math.toRadians(latitude2)) * sinHalfLongitude * sinHalfLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // cell coordinates, latitude 90 and longitude 180 fall into the last row and column
+    private static int row(double latitude) {
+        return Math.min(ROWS - 1, Math.max(0, (int) ((latitude + 90) / CELL_DEGREES)));
+    }
+
+    private static int column(double longitude) {
+        return Math.min(COLUMNS - 1, Math.max(0, (int) ((longitude + 180) / CELL_DEGREES)));
+    }
+
+    private static int cell(int row, int column) {
+        return row * COLUMNS + column;
+    }
+
+}
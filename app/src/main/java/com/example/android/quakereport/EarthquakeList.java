@@ -0,0 +1,408 @@
+package com.example.android.quakereport;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+// compact append-only list of earthquakes for large result sets
+// fields are kept in primitive columns instead of one object per event, repeated locations
+// share a single pooled String and event page urls are reduced to their event id
+// get() returns a lightweight Earthquake view, the most recently used views are cached
+// formatted row values are kept in a column of their own, filled by EarthquakeFormatter.formatAll() on the
+// loader thread, and a display set on a view is written back when the view leaves the cache,
+// so a row is formatted once however often its view is created again
+// a list decoded lazily by EarthquakeCodec keeps its Strings in the encoded buffer, each id, location
+// and url is decoded the first time it is read, so rows that are never shown never create them
+// add() appends a row to the columns, e.g. while a response is parsed or a list grows on screen,
+// rows are never changed or removed, and appending does not count as a structural modification,
+// so a subList(0, size()) taken earlier stays a fixed view of the rows it covered
+public final class EarthquakeList extends AbstractList<Earthquake> implements RandomAccess {
+
+    // every USGS event page url is this prefix followed by the event id
+    private static final String EVENT_PAGE_PREFIX = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    // number of cached views, a power of two comfortably above the rows visible on screen
+    private static final int VIEW_CACHE_SIZE = 64;
+
+    // result sets with more rows than this are kept in an EarthquakeList rather than as objects
+    public static final int COLUMNAR_THRESHOLD = 1000;
+
+    // the columns are replaced when they grow, guarded by this like mSize
+    private int mSize;
+    private String[] mIds;
+    private float[] mMagnitudes;
+    private long[] mTimes;
+    private long[] mUpdated;
+
+    // index into mLocationPool for every earthquake, the first mLocationCount pool entries are in use
+    private int[] mLocationIndexes;
+    private String[] mLocationPool;
+    private int mLocationCount;
+
+    // pool index of each distinct location, rebuilt from the pool when rows are appended after trim()
+    private Map<String, Integer> mLocationDictionary;
+
+    // null when the url is EVENT_PAGE_PREFIX + id, otherwise the full url, which is null only without an id
+    private String[] mUrls;
+
+    // float keeps coordinates to about a meter and depth to far better than USGS reports it
+    private float[] mLatitudes;
+    private float[] mLongitudes;
+    private float[] mDepths;
+
+    // display model of every row, null until the row is formatted
+    private EarthquakeDisplay[] mDisplays;
+
+    // buffer of a lazily decoded list and the offsets of its encoded Strings, null for a built list
+    // an offset is set to -1 once its String is decoded, and is -1 for an appended row, guarded by this
+    private final ByteBuffer mSource;
+    private int[] mIdOffsets;
+    private int[] mUrlOffsets;
+    private int[] mLocationOffsets;
+
+    // recently created views, slot is position modulo VIEW_CACHE_SIZE
+    private final Earthquake[] mViewCache = new Earthquake[VIEW_CACHE_SIZE];
+    private final int[] mViewCachePositions = new int[VIEW_CACHE_SIZE];
+
+    public EarthquakeList() {
+        this(16);
+    }
+
+    // empty list filled with add(), pass the expected number of earthquakes to avoid growing the columns
+    public EarthquakeList(int capacity) {
+
+        capacity = Math.max(capacity, 1);
+        mIds = new String[capacity];
+        mMagnitudes = new float[capacity];
+        mTimes = new long[capacity];
+        mUpdated = new long[capacity];
+        mLocationIndexes = new int[capacity];
+        mLocationPool = new String[16];
+        mLocationDictionary = new HashMap<>();
+        mUrls = new String[capacity];
+        mLatitudes = new float[capacity];
+        mLongitudes = new float[capacity];
+        mDepths = new float[capacity];
+        mDisplays = new EarthquakeDisplay[capacity];
+        mSource = null;
+
+        // no position is cached yet
+        Arrays.fill(mViewCachePositions, -1);
+    }
+
+    // lazily decoded list, see EarthquakeCodec.decodeLazy(), the String columns start out empty
+    EarthquakeList(ByteBuffer source, int[] idOffsets, int[] urlOffsets, int[] locationOffsets,
+                   int[] locationIndexes, float[] magnitudes, long[] times, long[] updated,
+                   float[] latitudes, float[] longitudes, float[] depths) {
+
+        mSize = idOffsets.length;
+        mIds = new String[mSize];
+        mMagnitudes = magnitudes;
+        mTimes = times;
+        mUpdated = updated;
+        mLocationIndexes = locationIndexes;
+        mLocationPool = new String[locationOffsets.length];
+        mLocationCount = locationOffsets.length;
+        mUrls = new String[mSize];
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+        mDepths = depths;
+        mDisplays = new EarthquakeDisplay[mSize];
+        mSource = source;
+        mIdOffsets = idOffsets;
+        mUrlOffsets = urlOffsets;
+        mLocationOffsets = locationOffsets;
+
+        // no position is cached yet
+        Arrays.fill(mViewCachePositions, -1);
+    }
+
+    @Override
+    public synchronized int size() {
+        return mSize;
+    }
+
+    // rows can only be appended, at index size()
+    @Override
+    public synchronized void add(int index, Earthquake earthquake) {
+
+        if (index != mSize) {
+            throw new UnsupportedOperationException("Earthquakes can only be appended, index " + index
+                    + ", size " + mSize);
+        }
+        add(earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocation(),
+                earthquake.getTime(), earthquake.getUpdated(), earthquake.getUrl(),
+                earthquake.getLatitude(), earthquake.getLongitude(), earthquake.getDepth());
+
+        // a row formatted before it was appended keeps its display
+        mDisplays[mSize - 1] = earthquake.getDisplay();
+    }
+
+    // append one earthquake from its raw fields, no intermediate Earthquake object is needed
+    // coordinates are NaN when unknown, a null url with an id stands for the USGS event page of that id
+    public synchronized void add(String id, double magnitude, String location, long time, long updated, String url,
+                                 double latitude, double longitude, double depth) {
+
+        if (mSize == mIds.length) {
+            grow(Math.max(mSize * 2, 16));
+        }
+
+        mIds[mSize] = id;
+        mMagnitudes[mSize] = (float) magnitude;
+        mTimes[mSize] = time;
+        mUpdated[mSize] = updated;
+        mLocationIndexes[mSize] = locationIndex(location);
+
+        // drop the url when it can be rebuilt from the id
+        mUrls[mSize] = isEventPageUrl(id, url) ? null : url;
+
+        mLatitudes[mSize] = (float) latitude;
+        mLongitudes[mSize] = (float) longitude;
+        mDepths[mSize] = (float) depth;
+
+        // the Strings of an appended row are already decoded
+        if (mSource != null) {
+            mIdOffsets[mSize] = -1;
+            mUrlOffsets[mSize] = -1;
+        }
+
+        mSize++;
+    }
+
+    // view of the earthquake at this position, the same instance is returned while it stays cached
+    // synchronized because the adapter diff reads the list from a background thread
+    @Override
+    public synchronized Earthquake get(int position) {
+
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + mSize);
+        }
+
+        int slot = position & (VIEW_CACHE_SIZE - 1);
+        if (mViewCachePositions[slot] == position) {
+            return mViewCache[slot];
+        }
+
+        // a display set on the view leaving the slot, e.g. by a bind, goes back to its row
+        writeBackDisplay(slot);
+
+        Earthquake earthquake = new Earthquake(getId(position), mMagnitudes[position],
+                getLocation(position), mTimes[position], mUpdated[position], getUrl(position),
+                mLatitudes[position], mLongitudes[position], mDepths[position]);
+        earthquake.setDisplay(mDisplays[position]);
+        mViewCache[slot] = earthquake;
+        mViewCachePositions[slot] = position;
+        return earthquake;
+    }
+
+    // display model of the row, null while it is not formatted
+    public synchronized EarthquakeDisplay getDisplay(int position) {
+
+        int slot = position & (VIEW_CACHE_SIZE - 1);
+        if (mViewCachePositions[slot] == position && mViewCache[slot].getDisplay() != null) {
+            return mViewCache[slot].getDisplay();
+        }
+        return mDisplays[position];
+    }
+
+    // keep the display model of the row, also on its cached view
+    public synchronized void setDisplay(int position, EarthquakeDisplay display) {
+
+        mDisplays[position] = display;
+        int slot = position & (VIEW_CACHE_SIZE - 1);
+        if (mViewCachePositions[slot] == position) {
+            mViewCache[slot].setDisplay(display);
+        }
+    }
+
+    private void writeBackDisplay(int slot) {
+
+        int position = mViewCachePositions[slot];
+        if (position >= 0 && mViewCache[slot].getDisplay() != null) {
+            mDisplays[position] = mViewCache[slot].getDisplay();
+        }
+    }
+
+    // column accessors, read a single field without creating a view
+    public String getId(int position) {
+        String id = mIds[position];
+        return id != null || mSource == null ? id : decodeId(position);
+    }
+
+    public double getMagnitude(int position) {
+        return mMagnitudes[position];
+    }
+
+    public long getTime(int position) {
+        return mTimes[position];
+    }
+
+    public long getUpdated(int position) {
+        return mUpdated[position];
+    }
+
+    public String getLocation(int position) {
+        String location = mLocationPool[mLocationIndexes[position]];
+        return location != null || mSource == null ? location : decodeLocation(mLocationIndexes[position]);
+    }
+
+    public String getUrl(int position) {
+        String url = mUrls[position];
+        if (url == null && mSource != null) {
+            url = decodeUrl(position);
+        }
+        String id = getId(position);
+        return url != null || id == null ? url : EVENT_PAGE_PREFIX + id;
+    }
+
+    // true if the url of this earthquake is the USGS event page of its id, and so needs no storage
+    public boolean hasEventPageUrl(int position) {
+        String url = mUrls[position];
+        if (url == null && mSource != null) {
+            url = decodeUrl(position);
+        }
+        return url == null && getId(position) != null;
+    }
+
+    // true if the url can be rebuilt from the id
+    static boolean isEventPageUrl(String id, String url) {
+        return id != null && url != null && url.length() == EVENT_PAGE_PREFIX.length() + id.length()
+                && url.startsWith(EVENT_PAGE_PREFIX) && url.endsWith(id);
+    }
+
+    public double getLatitude(int position) {
+        return mLatitudes[position];
+    }
+
+    public double getLongitude(int position) {
+        return mLongitudes[position];
+    }
+
+    public double getDepth(int position) {
+        return mDepths[position];
+    }
+
+    // the decoders below run at most once per String, readers that find it decoded skip the lock
+
+    private synchronized String decodeId(int position) {
+
+        if (mIdOffsets[position] >= 0) {
+            mIds[position] = EarthquakeCodec.readString(mSource, mIdOffsets[position]);
+            mIdOffsets[position] = -1;
+        }
+        return mIds[position];
+    }
+
+    private synchronized String decodeLocation(int index) {
+
+        if (mLocationOffsets[index] >= 0) {
+            mLocationPool[index] = EarthquakeCodec.readString(mSource, mLocationOffsets[index]);
+            mLocationOffsets[index] = -1;
+        }
+        return mLocationPool[index];
+    }
+
+    // null when the url is the event page of the id, like the column itself
+    private synchronized String decodeUrl(int position) {
+
+        if (mUrlOffsets[position] >= 0) {
+            mUrls[position] = EarthquakeCodec.readString(mSource, mUrlOffsets[position]);
+            mUrlOffsets[position] = -1;
+        }
+        return mUrls[position];
+    }
+
+    // look the location up in the pool, add it on first sight
+    private int locationIndex(String location) {
+
+        if (mLocationDictionary == null) {
+            mLocationDictionary = new HashMap<>();
+            for (int i = 0; i < mLocationCount; i++) {
+                mLocationDictionary.put(mSource == null ? mLocationPool[i] : decodeLocation(i), i);
+            }
+        }
+
+        Integer locationIndex = mLocationDictionary.get(location);
+        if (locationIndex == null) {
+            if (mLocationCount == mLocationPool.length) {
+                mLocationPool = Arrays.copyOf(mLocationPool, Math.max(mLocationCount * 2, 16));
+                if (mLocationOffsets != null) {
+                    mLocationOffsets = Arrays.copyOf(mLocationOffsets, mLocationPool.length);
+                }
+            }
+            locationIndex = mLocationCount++;
+            mLocationPool[locationIndex] = location;
+            if (mLocationOffsets != null) {
+                mLocationOffsets[locationIndex] = -1;
+            }
+            mLocationDictionary.put(location, locationIndex);
+        }
+        return locationIndex;
+    }
+
+    // resize every column to the given capacity
+    private void grow(int capacity) {
+
+        mIds = Arrays.copyOf(mIds, capacity);
+        mMagnitudes = Arrays.copyOf(mMagnitudes, capacity);
+        mTimes = Arrays.copyOf(mTimes, capacity);
+        mUpdated = Arrays.copyOf(mUpdated, capacity);
+        mLocationIndexes = Arrays.copyOf(mLocationIndexes, capacity);
+        mUrls = Arrays.copyOf(mUrls, capacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        mDepths = Arrays.copyOf(mDepths, capacity);
+        mDisplays = Arrays.copyOf(mDisplays, capacity);
+        if (mSource != null) {
+            mIdOffsets = Arrays.copyOf(mIdOffsets, capacity);
+            mUrlOffsets = Arrays.copyOf(mUrlOffsets, capacity);
+        }
+    }
+
+    // trim the columns to the final size, the location dictionary is only rebuilt if rows are appended later
+    private synchronized void trim() {
+
+        if (mSize < mIds.length) {
+            grow(mSize);
+        }
+        mLocationPool = Arrays.copyOf(mLocationPool, mLocationCount);
+        mLocationDictionary = null;
+    }
+
+    // appends earthquakes column by column, build() then trims them to a finished EarthquakeList
+    // the builder must not be used once the list is built
+    public static final class Builder {
+
+        private final EarthquakeList mList;
+
+        public Builder() {
+            this(16);
+        }
+
+        // pass the expected number of earthquakes to avoid growing the columns
+        public Builder(int capacity) {
+            mList = new EarthquakeList(capacity);
+        }
+
+        public Builder add(Earthquake earthquake) {
+            mList.add(earthquake);
+            return this;
+        }
+
+        // add one earthquake from its raw fields, see EarthquakeList.add()
+        public Builder add(String id, double magnitude, String location, long time, long updated, String url,
+                           double latitude, double longitude, double depth) {
+            mList.add(id, magnitude, location, time, updated, url, latitude, longitude, depth);
+            return this;
+        }
+
+        public EarthquakeList build() {
+            mList.trim();
+            return mList;
+        }
+    }
+
+}
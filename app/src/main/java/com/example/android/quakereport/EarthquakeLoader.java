@@ -2,18 +2,37 @@ package com.example.android.quakereport;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import java.util.List;
 
 // loads a list of earthquake metadata using a background AsyncTask
 // to perform a network URL request
 public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
 
-    // simple tag for log messages
-    private static final String LOG_TAG = EarthquakeLoader.class.getSimpleName();
+    // progressive loading mode, receives batches on the UI thread before loadInBackground() returns
+    public interface OnProgressListener {
+
+        // firstBatch is true for the first batch of each new load, so previous results can be cleared
+        void onEarthquakesLoaded(List<Earthquake> batch, boolean firstBatch);
+    }
 
     // initialize state variable for url String
     private String mUrl;
 
+    // last delivered result, returned again without a fetch when the loader restarts
+    private List<Earthquake> mEarthquakes;
+
+    // optional listener for progressive loading, only touched on the UI thread
+    private OnProgressListener mProgressListener;
+
+    // batches are parsed on the background thread and posted to the UI thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // incremented for every load so that batches of a superseded load are dropped
+    private volatile int mGeneration;
+
     public EarthquakeLoader(Context context, String url) {
 
         // inherit loader initialization configuration from superclass AsyncTaskLoader
@@ -23,12 +42,49 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
         mUrl = url;
     }
 
+    // set to null to return to the default mode of a single result in onLoadFinished()
+    public void setOnProgressListener(OnProgressListener listener) {
+        mProgressListener = listener;
+    }
+
     @Override
     protected void onStartLoading() {
 
-        // this method is required to trigger loadInBackground()
-        forceLoad();
+        // hand back the result already held, e.g. after a rotation or returning from SettingsActivity
+        if (mEarthquakes != null) {
+            deliverResult(mEarthquakes);
+        }
+
+        // this method is required to trigger loadInBackground(), only when there is nothing to show or it is stale
+        if (takeContentChanged() || mEarthquakes == null) {
+            forceLoad();
+        }
+
+    }
+
+    @Override
+    public void deliverResult(List<Earthquake> earthquakes) {
+
+        // keep the result so a restarted activity does not fetch it again,
+        // a load that completes while stopped is kept and delivered by onStartLoading()
+        mEarthquakes = earthquakes;
+        if (isStarted()) {
+            super.deliverResult(earthquakes);
+        }
+    }
+
+    // replace the held result without delivering it, after changes were applied to the displayed list
+    // directly, so a restarted activity gets the patched list back instead of the one last loaded
+    public void replaceResult(List<Earthquake> earthquakes) {
+        mEarthquakes = earthquakes;
+    }
+
+    @Override
+    protected void onReset() {
 
+        // a reset loader starts over with the next initLoader()
+        super.onReset();
+        mEarthquakes = null;
     }
 
     @Override
@@ -39,11 +95,99 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
             return null;
         }
 
-        // perform the HTTP request for article data and process the JSON response
-        List<Earthquake> earthquakes = QueryUtils.fetchEarthquakeData(mUrl);
+        // whole load time and what it allocated, from the first store read to the formatted result
+        long loadStart = LoadMetrics.start();
+        long allocatedStart = LoadMetrics.allocatedBytes();
+
+        List<Earthquake> earthquakes = load();
 
+        LoadMetrics.stop(LoadMetrics.LOAD, loadStart);
+        if (allocatedStart >= 0) {
+            LoadMetrics.record(LoadMetrics.ALLOCATED_BYTES, LoadMetrics.allocatedBytes() - allocatedStart);
+        }
         return earthquakes;
+    }
+
+    // the load itself, answered from memory, the store and the network in that order
+    private List<Earthquake> load() {
+
+        // identify this load, any batch still queued from an earlier one is now stale
+        final int generation = ++mGeneration;
+
+        // the same query parameters sent to USGS select rows from the local store
+        Uri uri = Uri.parse(mUrl);
+        EarthquakeQuery query = EarthquakeQuery.fromUrl(mUrl);
+        double minMagnitude = query.getMinMagnitude();
+        String orderBy = uri.getQueryParameter("orderby");
+        int limit = query.getLimit();
+
+        // rows are formatted here on the loader thread, so binding on the UI thread only assigns values
+        final EarthquakeFormatter formatter = EarthquakeAdapter.createFormatter(getContext());
+
+        // a preference change that narrows or reorders the loaded list is answered from memory
+        EarthquakeQueryEngine engine = EarthquakeQueryEngine.getInstance();
+        List<Earthquake> inMemory = engine.query(query);
+        if (inMemory != null) {
+            formatter.formatAll(inMemory);
+            EarthquakeSnapshot.write(getContext(), mUrl, inMemory);
+            return inMemory;
+        }
+
+        // read the local store first, this answers in milliseconds
+        final EarthquakeStore store = EarthquakeStore.getInstance(getContext());
+        List<Earthquake> localEarthquakes = store.query(minMagnitude, orderBy, limit);
+        formatter.formatAll(localEarthquakes);
+
+        // show stored rows right away, network batches then only go to the store
+        final boolean showingLocal = !localEarthquakes.isEmpty();
+        if (showingLocal) {
+            postBatch(localEarthquakes, true, generation);
+        }
+
+        // the query is fetched into the store, incrementally once it has been fetched before
+        // batches are only shown here while there were no stored rows to show
+        EarthquakeSync.sync(getContext(), mUrl, new EarthquakeSync.OnBatchStoredListener() {
+
+            // true until the first batch of this load has been posted
+            private boolean mFirst = true;
+
+            @Override
+            public void onBatchStored(List<Earthquake> batch, RequestCoalescer.Request request) {
+                if (!showingLocal && !request.isCancelled()) {
+                    formatter.formatAll(batch);
+                    postBatch(batch, mFirst, generation);
+                    mFirst = false;
+                }
+            }
+        });
+
+        // the final result comes from the store, so stored and fetched events are merged by id
+        List<Earthquake> earthquakes = store.query(minMagnitude, orderBy, limit);
+        formatter.formatAll(earthquakes);
+
+        // the next cold start renders this list before the loader runs
+        EarthquakeSnapshot.write(getContext(), mUrl, earthquakes);
+
+        // later queries covered by this result skip the store and the network
+        engine.setData(query, earthquakes);
+
+        return earthquakes;
+
+    }
+
+    // hand a parsed batch to the progress listener on the UI thread
+    private void postBatch(final List<Earthquake> batch, final boolean firstBatch, final int generation) {
+
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
 
+                // the listener may have been removed, or a newer load may have started
+                if (mProgressListener != null && generation == mGeneration && !isReset()) {
+                    mProgressListener.onEarthquakesLoaded(batch, firstBatch);
+                }
+            }
+        });
     }
 
 }
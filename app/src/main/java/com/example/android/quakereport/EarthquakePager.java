@@ -0,0 +1,333 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// endless scrolling of EarthquakeActivity, the loader delivers the first page and the following ones
+// are requested from USGS with offset and limit once the list is scrolled within PREFETCH_DISTANCE rows
+// of its end, so the next page is usually in before the last row is on screen
+// the first page comes from the local store, not from USGS, so the network has not confirmed any row yet:
+// the first request starts at offset 1 and asks for the shown rows as well, and rows already shown are
+// skipped by id, so a first page that differs from USGS rows 1 to 20 can neither skip nor repeat rows
+// the page size follows the measured rate of the previous pages, download and parse together,
+// so that a page takes about TARGET_PAGE_MILLIS on the current connection
+// rows more than KEEP_DISTANCE away from the screen are released, see EarthquakePages, and released pages
+// coming back within KEEP_DISTANCE are decoded and formatted on a thread of their own before they are bound
+// kept across rotation by EarthquakeActivity, all methods are called on the UI thread
+public final class EarthquakePager {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = EarthquakePager.class.getSimpleName();
+
+    // limit of the loader query, also the page size before anything is measured
+    public static final int FIRST_PAGE_SIZE = 20;
+
+    // bounds of the adaptive page size, USGS accepts up to 20000
+    private static final int MIN_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // time one page should take to fetch and parse
+    private static final long TARGET_PAGE_MILLIS = 1500;
+
+    // weight of the latest page in the smoothed rate
+    private static final double RATE_SMOOTHING = 0.3;
+
+    // rows left below the screen when the next page is requested
+    private static final int PREFETCH_DISTANCE = 20;
+
+    // rows above and below the screen that stay decoded
+    private static final int KEEP_DISTANCE = 200;
+
+    // ids of the most recent rows kept for skipping repeated rows, far more than the events that
+    // arrive between two requests
+    private static final int MAX_TRACKED_IDS = 2 * MAX_PAGE_SIZE;
+
+    // wait after a failed page before scrolling asks again
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    // receives every page appended to the list
+    public interface OnPageLoadedListener {
+        void onPageLoaded(EarthquakePages pages, int start, int count);
+    }
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // one thread, pages are requested one after the other
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "EarthquakePager");
+        }
+    });
+
+    // decodes and formats released pages ahead of the screen, a page request may take seconds
+    private final ExecutorService mRestoreExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "EarthquakePager restore");
+        }
+    });
+
+    // formats restored pages, created and used on the restore thread only
+    private EarthquakeFormatter mRestoreFormatter;
+
+    private OnPageLoadedListener mListener;
+
+    // query, first page as delivered by the loader and the rows loaded so far, null before the first page
+    private String mUrl;
+    private List<Earthquake> mFirstPage;
+    private EarthquakePages mPages;
+
+    // ids of the last loaded rows, oldest first, results shift between requests when new events arrive,
+    // only by a few rows, so older ids are dropped and the set does not grow with the list, see trackId()
+    private final Set<String> mIds = new LinkedHashSet<>();
+
+    // indexes of the released pages being restored
+    private final Set<Integer> mRestoring = new HashSet<>();
+
+    // 1-based USGS offset of the next page, every row before it has been returned by the network
+    private int mNextOffset;
+
+    // incremented by every reset, pages requested before it are dropped
+    private int mGeneration;
+
+    private boolean mLoading;
+    private boolean mExhausted;
+    private long mRetryAt;
+
+    // smoothed rows per second of the previous pages, 0 until the first one is measured
+    private double mRowsPerSecond;
+
+    public EarthquakePager(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public void setListener(OnPageLoadedListener listener) {
+        mListener = listener;
+    }
+
+    // start over with the first page of a query, returns the list to display
+    // the same first page again, as after a rotation, keeps the pages already loaded
+    public EarthquakePages reset(String url, List<Earthquake> firstPage) {
+
+        if (mPages != null && url.equals(mUrl) && mFirstPage == firstPage) {
+            return mPages;
+        }
+
+        // the adapter replaces the old pages before it binds again, their released pages are not read anymore
+        if (mPages != null) {
+            mPages.close();
+        }
+
+        mGeneration++;
+        mUrl = url;
+        mFirstPage = firstPage;
+        mPages = new EarthquakePages(firstPage, mContext.getCacheDir());
+        mIds.clear();
+        mRestoring.clear();
+        for (Earthquake earthquake : firstPage) {
+            trackId(earthquake.getId());
+        }
+        mNextOffset = 1;
+        mLoading = false;
+        mRetryAt = 0;
+        mExhausted = false;
+        return mPages;
+    }
+
+    // called with the visible rows after every scroll, requests the next page and releases distant ones
+    public void onScrolled(int firstVisible, int lastVisible) {
+
+        if (mPages == null) {
+            return;
+        }
+        mPages.release(firstVisible, lastVisible, KEEP_DISTANCE);
+        restorePages(firstVisible, lastVisible);
+
+        if (!mLoading && !mExhausted && lastVisible >= mPages.size() - PREFETCH_DISTANCE
+                && SystemClock.elapsedRealtime() >= mRetryAt) {
+            requestPage();
+        }
+    }
+
+    // the activity is finishing, drop the file of the released pages
+    public void close() {
+
+        mGeneration++;
+        if (mPages != null) {
+            mPages.close();
+        }
+    }
+
+    // remember the id of a loaded row, returns false if it is among the last loaded ones already
+    private boolean trackId(String id) {
+
+        if (!mIds.add(id)) {
+            return false;
+        }
+        Iterator<String> iterator = mIds.iterator();
+        while (mIds.size() > MAX_TRACKED_IDS) {
+            iterator.next();
+            iterator.remove();
+        }
+        return true;
+    }
+
+    // decode and format the released pages within KEEP_DISTANCE of the screen, so their rows
+    // are bound with their display values like the rows of a new page
+    private void restorePages(int firstVisible, int lastVisible) {
+
+        final EarthquakePages pages = mPages;
+        final int generation = mGeneration;
+        for (final int index : pages.findPagesToRestore(firstVisible, lastVisible, KEEP_DISTANCE)) {
+            if (!mRestoring.add(index)) {
+                continue;
+            }
+            mRestoreExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+
+                    // null if a row of the page was read, and so decoded, in the meantime
+                    final EarthquakeList rows = pages.decodePage(index);
+                    if (rows != null) {
+                        if (mRestoreFormatter == null) {
+                            mRestoreFormatter = EarthquakeAdapter.createFormatter(mContext);
+                        }
+                        mRestoreFormatter.formatAll(rows);
+                    }
+
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation != mGeneration) {
+                                return;
+                            }
+                            mRestoring.remove(index);
+                            if (rows != null) {
+                                pages.restorePage(index, rows);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    // rows per page for the current rate, the first page size until a page has been measured
+    private int getPageSize() {
+
+        if (mRowsPerSecond <= 0) {
+            return FIRST_PAGE_SIZE;
+        }
+        long size = Math.round(mRowsPerSecond * TARGET_PAGE_MILLIS / 1000);
+        return (int) Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, size));
+    }
+
+    private void requestPage() {
+
+        mLoading = true;
+        final int generation = mGeneration;
+
+        // shown rows the network has not returned yet are asked for again ahead of the new ones
+        final int limit = getPageSize() + Math.max(0, mPages.size() - (mNextOffset - 1));
+        final String pageUrl = QueryUtils.replaceQueryParameters(mUrl,
+                "offset", String.valueOf(mNextOffset), "limit", String.valueOf(limit));
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                long start = SystemClock.elapsedRealtime();
+                List<Earthquake> fetched = null;
+                try {
+                    // a page is held as objects until it is released, so its rows are read out of the
+                    // parsed columns here, stored like every other fetch, and formatted so binding only assigns values
+                    fetched = new ArrayList<>(QueryUtils.fetchEarthquakeDataOrThrow(pageUrl, null, null));
+                    EarthquakeStore.getInstance(mContext).upsert(fetched);
+                    EarthquakeAdapter.createFormatter(mContext).formatAll(fetched);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem loading the next page of earthquakes.", e);
+                }
+                final List<Earthquake> page = fetched;
+                final long elapsed = SystemClock.elapsedRealtime() - start;
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageFetched(generation, limit, page, elapsed);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageFetched(int generation, int limit, List<Earthquake> fetched, long elapsedMillis) {
+
+        // the query changed while this page was loading
+        if (generation != mGeneration) {
+            return;
+        }
+        mLoading = false;
+
+        if (fetched == null) {
+            mRetryAt = SystemClock.elapsedRealtime() + RETRY_DELAY_MILLIS;
+            return;
+        }
+
+        // only full pages say something about the rate, a short one is the end of the result
+        if (fetched.size() == limit) {
+            double rate = fetched.size() * 1000.0 / Math.max(elapsedMillis, 1);
+            mRowsPerSecond = mRowsPerSecond <= 0 ? rate
+                    : mRowsPerSecond + RATE_SMOOTHING * (rate - mRowsPerSecond);
+        }
+        mNextOffset += fetched.size();
+
+        // rows of the first page, and rows that moved down from the previous page since it was loaded, are already shown
+        List<Earthquake> rows = new ArrayList<>(fetched.size());
+        for (Earthquake earthquake : fetched) {
+            if (earthquake.getId() == null || trackId(earthquake.getId())) {
+                rows.add(earthquake);
+            }
+        }
+
+        // a page with nothing new, for example from a server that ignores offset, also ends the list
+        mExhausted = fetched.size() < limit || rows.isEmpty();
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        int start = mPages.size();
+        mPages.addPage(rows);
+        if (mListener != null) {
+            mListener.onPageLoaded(mPages, start, rows.size());
+        }
+    }
+
+}
@@ -0,0 +1,291 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+// the rows of EarthquakeActivity while scrolling through pages, one page for each USGS request
+// pages far from the screen are released to their EarthquakeCodec encoding, a small fraction of the
+// memory of formatted rows, and decoded again the first time one of their rows is read
+// encodings beyond MAX_ENCODED_BYTES are moved to a file in the cache directory, those of the pages
+// farthest from the screen first, and mapped back when read, so the heap stops growing with the pages
+// scrolled through, only the file does
+// EarthquakePager decodes and formats released pages ahead of the screen on its own thread, see
+// decodePage(), a row read before that is decoded on the spot and formatted on its first bind
+// grows only on the UI thread, synchronized because the pager decodes pages on its own thread
+public final class EarthquakePages extends AbstractList<Earthquake> implements RandomAccess {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = EarthquakePages.class.getSimpleName();
+
+    // encodings kept on the heap, about 10000 rows
+    private static final int MAX_ENCODED_BYTES = 256 * 1024;
+
+    // one page, the rows are null while it is released
+    private static final class Page {
+
+        final int mStart;
+        final int mSize;
+        List<Earthquake> mRows;
+
+        // encoded on the first release and kept, a page that is read again is released for free
+        // null once the encoding is moved to the spill file, where it starts at mSpillOffset
+        byte[] mEncoded;
+        long mSpillOffset = -1;
+        int mSpillLength;
+
+        Page(int start, List<Earthquake> rows) {
+            mStart = start;
+            mSize = rows.size();
+            mRows = rows;
+        }
+
+        // rows between this page and the visible ones, 0 if it is on screen
+        int distanceTo(int firstVisible, int lastVisible) {
+
+            if (mStart + mSize <= firstVisible) {
+                return firstVisible - (mStart + mSize) + 1;
+            }
+            return Math.max(0, mStart - lastVisible);
+        }
+    }
+
+    // pages in row order
+    private final List<Page> mPages = new ArrayList<>();
+    private int mSize;
+
+    // directory of the spill file, null to keep every encoding on the heap, or once writing it failed
+    private File mSpillDirectory;
+
+    // created by the first encoding moved out of the heap and deleted right away, so nothing is left
+    // behind if the process dies, the open channel keeps it readable until close()
+    private FileChannel mSpillFile;
+
+    // bytes of the encodings still on the heap
+    private int mEncodedBytes;
+
+    private boolean mClosed;
+
+    // spillDirectory is usually the cache directory, null keeps every encoding on the heap
+    public EarthquakePages(List<Earthquake> firstPage, File spillDirectory) {
+        mSpillDirectory = spillDirectory;
+        addPage(firstPage);
+    }
+
+    // append the rows of the next page
+    public synchronized void addPage(List<Earthquake> rows) {
+
+        mPages.add(new Page(mSize, rows));
+        mSize += rows.size();
+    }
+
+    @Override
+    public synchronized int size() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized Earthquake get(int position) {
+
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + mSize);
+        }
+
+        // read before the pager restored it, the rows are formatted when they are bound
+        Page page = mPages.get(findPage(position));
+        if (page.mRows == null) {
+            page.mRows = decode(page);
+        }
+        return page.mRows.get(position - page.mStart);
+    }
+
+    // release every page with no row within distance rows of the visible ones
+    public synchronized void release(int firstVisible, int lastVisible, int distance) {
+
+        for (Page page : mPages) {
+            if (page.mRows != null && page.distanceTo(firstVisible, lastVisible) > distance) {
+                if (page.mEncoded == null && page.mSpillOffset < 0) {
+                    page.mEncoded = EarthquakeCodec.encode(page.mRows);
+                    mEncodedBytes += page.mEncoded.length;
+                }
+                page.mRows = null;
+            }
+        }
+        spill(firstVisible, lastVisible);
+    }
+
+    // indexes of the released pages with a row within distance rows of the visible ones, nearest first,
+    // for the pager to restore ahead of the screen
+    public synchronized List<Integer> findPagesToRestore(int firstVisible, int lastVisible, int distance) {
+
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < mPages.size(); i++) {
+            Page page = mPages.get(i);
+            if (page.mRows == null && page.distanceTo(firstVisible, lastVisible) <= distance) {
+                indexes.add(i);
+            }
+        }
+        return indexes;
+    }
+
+    // the rows of a released page decoded on the calling thread, null if the page is no longer released
+    // call from a background thread, and hand the rows to restorePage() once they are formatted
+    public EarthquakeList decodePage(int index) {
+
+        ByteBuffer encoded;
+        synchronized (this) {
+            Page page = mPages.get(index);
+            if (page.mRows != null || mClosed) {
+                return null;
+            }
+            encoded = encodedBuffer(page);
+        }
+
+        // the encoding never changes once written, so it is decoded outside of the lock
+        try {
+            return EarthquakeCodec.decodeLazy(encoded);
+        } catch (IOException e) {
+            throw new IllegalStateException("Released page cannot be decoded", e);
+        }
+    }
+
+    // put back the rows of a page decoded by decodePage(), unless a read has restored it meanwhile
+    public synchronized void restorePage(int index, List<Earthquake> rows) {
+
+        Page page = mPages.get(index);
+        if (page.mRows == null) {
+            page.mRows = rows;
+        }
+    }
+
+    // true if a page is currently released, reading every row would decode it again
+    public synchronized boolean hasReleasedPages() {
+
+        for (Page page : mPages) {
+            if (page.mRows == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // drop the spill file once the list is no longer displayed, released pages cannot be read afterwards
+    public synchronized void close() {
+
+        mClosed = true;
+        mSpillDirectory = null;
+        if (mSpillFile != null) {
+            try {
+                mSpillFile.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing the file of released pages.", e);
+            }
+            mSpillFile = null;
+        }
+    }
+
+    // index of the page holding this row, pages are in row order
+    private int findPage(int position) {
+
+        int low = 0;
+        int high = mPages.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mPages.get(middle).mStart <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // move encodings of released pages to the spill file, farthest from the screen first,
+    // until the ones left on the heap fit MAX_ENCODED_BYTES
+    private void spill(int firstVisible, int lastVisible) {
+
+        while (mEncodedBytes > MAX_ENCODED_BYTES && mSpillDirectory != null) {
+
+            Page farthest = null;
+            for (Page page : mPages) {
+                if (page.mRows == null && page.mEncoded != null && (farthest == null
+                        || page.distanceTo(firstVisible, lastVisible) > farthest.distanceTo(firstVisible, lastVisible))) {
+                    farthest = page;
+                }
+            }
+
+            // the rest belongs to pages near the screen
+            if (farthest == null) {
+                return;
+            }
+
+            try {
+                write(farthest);
+            } catch (IOException e) {
+
+                // released pages stay on the heap, which still holds far less than their formatted rows
+                Log.e(LOG_TAG, "Problem moving released pages to disk.", e);
+                mSpillDirectory = null;
+                return;
+            }
+            mEncodedBytes -= farthest.mEncoded.length;
+            farthest.mEncoded = null;
+        }
+    }
+
+    // append the encoding of a page to the spill file
+    private void write(Page page) throws IOException {
+
+        if (mSpillFile == null) {
+            File file = File.createTempFile("pages", null, mSpillDirectory);
+            mSpillFile = new RandomAccessFile(file, "rw").getChannel();
+            if (!file.delete()) {
+                Log.e(LOG_TAG, "Problem deleting " + file + ", it is removed with the cache.");
+            }
+        }
+
+        long offset = mSpillFile.size();
+        ByteBuffer buffer = ByteBuffer.wrap(page.mEncoded);
+        while (buffer.hasRemaining()) {
+            mSpillFile.write(buffer, offset + buffer.position());
+        }
+        page.mSpillOffset = offset;
+        page.mSpillLength = page.mEncoded.length;
+    }
+
+    // the encoding of a released page, from the heap or mapped from the spill file
+    private ByteBuffer encodedBuffer(Page page) {
+
+        if (page.mEncoded != null) {
+            return ByteBuffer.wrap(page.mEncoded);
+        }
+        try {
+            if (mSpillFile == null) {
+                throw new IOException("Released pages are closed");
+            }
+            return mSpillFile.map(FileChannel.MapMode.READ_ONLY, page.mSpillOffset, page.mSpillLength);
+        } catch (IOException e) {
+            throw new IllegalStateException("Released page cannot be read", e);
+        }
+    }
+
+    // restore a released page, rows decoded from the codec are formatted again on first bind
+    private List<Earthquake> decode(Page page) {
+
+        try {
+            return EarthquakeCodec.decodeLazy(encodedBuffer(page));
+        } catch (IOException e) {
+
+            // the bytes were encoded by this list, they cannot be malformed
+            throw new IllegalStateException("Released page cannot be decoded", e);
+        }
+    }
+
+}
@@ -0,0 +1,390 @@
+package com.example.android.quakereport;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+import android.util.MalformedJsonException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+// streaming parser for the USGS GeoJSON feed, used by QueryUtils
+// has no dependency on the network or on a Context, so it can also run on a plain JVM
+public final class EarthquakeParser {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = EarthquakeParser.class.getSimpleName();
+
+    // size of the character buffer between the stream and the JSON reader
+    private static final int BUFFER_SIZE = 8192;
+
+    // number of parsed features handed to a batch listener at a time
+    public static final int BATCH_SIZE = 100;
+
+    // receives earthquakes in batches while the response is still being downloaded and parsed
+    // called on the thread that performs the parse
+    public interface OnBatchParsedListener {
+        void onBatchParsed(List<Earthquake> batch);
+    }
+
+    // constructor is deliberately empty as no objects of this class will ever exist
+    private EarthquakeParser() {}
+
+    // add the Earthquake objects of a GeoJSON stream to the given list using a pull-style walk
+    // each Earthquake is created as soon as its feature object is closed, and unused fields are
+    // skipped by the reader without ever being materialized as Strings or objects
+    // a feature with a value of the wrong type is skipped on its own, the features around it are kept
+    // on a malformed document the earthquakes parsed so far stay in the list and are published
+    // batches are collected apart from the list, so it can be an EarthquakeList that keeps only the columns
+    public static void parse(InputStream inputStream, List<Earthquake> earthquakes,
+                             OnBatchParsedListener listener) throws IOException {
+
+        // earthquakes not yet handed to the listener, a new list for every batch
+        List<Earthquake> batch = listener == null ? null : new ArrayList<Earthquake>(BATCH_SIZE);
+
+        // holder reused for every feature
+        FeatureFields fields = new FeatureFields();
+
+        // features dropped because of a bad value
+        int skipped = 0;
+
+        // define character set as UTF-8 and buffer the stream reads
+        InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+        JsonReader reader = new JsonReader(new BufferedReader(inputStreamReader, BUFFER_SIZE));
+
+        // Try to parse the raw stream
+        try {
+
+            // go down one level of JSON payload, only "features" is of interest
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("features")) {
+
+                    // loop through all features (features = earthquake events)
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Earthquake earthquake = readFeature(reader, fields);
+                        if (earthquake != null) {
+                            earthquakes.add(earthquake);
+                            if (batch != null) {
+                                batch.add(earthquake);
+                            }
+                        } else if (fields.malformed) {
+                            skipped++;
+                        }
+
+                        // publish a full batch, the listener may hand it to another thread
+                        if (batch != null && batch.size() >= BATCH_SIZE) {
+                            listener.onBatchParsed(batch);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                    reader.endArray();
+
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+        } catch (IllegalStateException | NumberFormatException e) {
+
+            // a token of the wrong type, report it like any other malformed document
+            MalformedJsonException malformed = new MalformedJsonException(e.getMessage());
+            malformed.initCause(e);
+            throw malformed;
+
+        } finally {
+
+            if (skipped > 0) {
+                Log.w(LOG_TAG, "Skipped " + skipped + " malformed earthquake features.");
+            }
+
+            // publish the remaining partial batch
+            if (batch != null && !batch.isEmpty()) {
+                listener.onBatchParsed(batch);
+            }
+        }
+    }
+
+    // read a single feature object, as pushed by LiveFeed, returns null if it has no properties block
+    // or one of its values has the wrong type
+    public static Earthquake parseFeature(String json) throws IOException {
+
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            return readFeature(reader, new FeatureFields());
+        } catch (IllegalStateException | NumberFormatException e) {
+
+            // a token of the wrong type, report it like any other malformed document
+            MalformedJsonException malformed = new MalformedJsonException(e.getMessage());
+            malformed.initCause(e);
+            throw malformed;
+        }
+    }
+
+    // read the per-event GeoJSON of USGS, a single feature object with many more properties than the feed
+    // returns null if the document has no properties block
+    public static EarthquakeDetail parseDetail(InputStream inputStream) throws IOException {
+
+        // the geometry has the same layout as in the feed
+        FeatureFields fields = new FeatureFields();
+        fields.clear();
+
+        // detail only attributes, with the same defaults as EarthquakeDetail uses for unknown values
+        String title = null;
+        String magnitudeType = null;
+        int felt = -1;
+        double intensity = Double.NaN;
+        String alert = null;
+        boolean tsunami = false;
+        String status = null;
+
+        InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+        JsonReader reader = new JsonReader(new BufferedReader(inputStreamReader, BUFFER_SIZE));
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+
+                String name = reader.nextName();
+                if (name.equals("properties") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    fields.hasProperties = true;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+
+                        String property = reader.nextName();
+
+                        // null values are skipped and the default is kept
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.skipValue();
+                            continue;
+                        }
+
+                        switch (property) {
+                            case "title":
+                                title = reader.nextString();
+                                break;
+                            case "mag":
+                                fields.magnitude = reader.nextDouble();
+                                break;
+                            case "magType":
+                                magnitudeType = reader.nextString();
+                                break;
+                            case "place":
+                                fields.location = reader.nextString();
+                                break;
+                            case "time":
+                                fields.time = reader.nextLong();
+                                break;
+                            case "url":
+                                fields.url = reader.nextString();
+                                break;
+                            case "felt":
+                                felt = reader.nextInt();
+                                break;
+                            case "mmi":
+                                intensity = reader.nextDouble();
+                                break;
+                            case "alert":
+                                alert = reader.nextString();
+                                break;
+                            case "tsunami":
+                                tsunami = reader.nextInt() != 0;
+                                break;
+                            case "status":
+                                status = reader.nextString();
+                                break;
+                            default:
+                                reader.skipValue();
+                                break;
+                        }
+                    }
+                    reader.endObject();
+                } else if (name.equals("geometry") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    readGeometry(reader, fields);
+                } else if (name.equals("id") && reader.peek() == JsonToken.STRING) {
+                    fields.id = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+        } catch (IllegalStateException | NumberFormatException e) {
+
+            // a token of the wrong type, report it like any other malformed document
+            MalformedJsonException malformed = new MalformedJsonException(e.getMessage());
+            malformed.initCause(e);
+            throw malformed;
+        }
+
+        if (!fields.hasProperties) {
+            return null;
+        }
+
+        // older events have no title, build one like USGS does
+        if (title == null) {
+            title = "M " + fields.magnitude + " - " + fields.location;
+        }
+        return new EarthquakeDetail(fields.id, title, fields.magnitude, magnitudeType, fields.time, fields.url,
+                fields.latitude, fields.longitude, fields.depth, felt, intensity, alert, tsunami, status);
+    }
+
+    // read a single feature object into the reusable holder, returns null if it has no properties block
+    // or one of its values has the wrong type, the rest of the feature is still consumed so the next one can be read
+    private static Earthquake readFeature(JsonReader reader, FeatureFields fields) throws IOException {
+
+        // reset the attributes to safe defaults, USGS sends explicit nulls for some fields
+        fields.clear();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+
+            String name = reader.nextName();
+
+            // properties Object contains the desired attributes
+            // the event id is a sibling of properties and usually comes after it
+            if (name.equals("properties")) {
+                readProperties(reader, fields);
+            } else if (name.equals("geometry") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readGeometry(reader, fields);
+            } else if (name.equals("id") && reader.peek() == JsonToken.STRING) {
+                fields.id = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // add data to new Earthquake object
+        return fields.hasProperties && !fields.malformed ? fields.build() : null;
+    }
+
+    // read the desired attributes out of a properties object, skipping everything else
+    private static void readProperties(JsonReader reader, FeatureFields fields) throws IOException {
+
+        fields.hasProperties = true;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+
+            String name = reader.nextName();
+
+            // null values are skipped and the default is kept
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+
+            // a value of the wrong type or out of range is left unread by the reader,
+            // skip it and drop the feature, syntax errors already surfaced in peek() above
+            try {
+                switch (name) {
+                    case "mag":
+                        fields.magnitude = (float) reader.nextDouble(); // cast double to float
+                        break;
+                    case "place":
+                        fields.location = reader.nextString();
+                        break;
+                    case "time":
+                        fields.time = reader.nextLong();
+                        break;
+                    case "updated":
+                        fields.updated = reader.nextLong();
+                        break;
+                    case "url":
+                        fields.url = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            } catch (IllegalStateException | NumberFormatException | MalformedJsonException e) {
+                fields.malformed = true;
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // read the point coordinates out of a geometry object, GeoJSON orders them longitude, latitude, depth
+    private static void readGeometry(JsonReader reader, FeatureFields fields) throws IOException {
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("coordinates") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    if (reader.peek() != JsonToken.NUMBER) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    try {
+                        if (i == 0) {
+                            fields.longitude = reader.nextDouble();
+                        } else if (i == 1) {
+                            fields.latitude = reader.nextDouble();
+                        } else if (i == 2) {
+                            fields.depth = reader.nextDouble();
+                        } else {
+                            reader.skipValue();
+                        }
+                    } catch (NumberFormatException | MalformedJsonException e) {
+
+                        // a number out of range, the epicenter is unknown but the event is still kept
+                        fields.latitude = Double.NaN;
+                        fields.longitude = Double.NaN;
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // attributes of the feature currently being parsed, one instance is reused for a whole response
+    private static final class FeatureFields {
+
+        boolean hasProperties;
+        boolean malformed;
+        String id;
+        double magnitude;
+        String location;
+        long time;
+        long updated;
+        String url;
+        double latitude;
+        double longitude;
+        double depth;
+
+        void clear() {
+            hasProperties = false;
+            malformed = false;
+            id = null;
+            magnitude = 0;
+            location = "";
+            time = 0;
+            updated = 0;
+            url = "";
+            latitude = Double.NaN;
+            longitude = Double.NaN;
+            depth = Double.NaN;
+        }
+
+        Earthquake build() {
+            // events that were never revised report no update time, use the origin time
+            return new Earthquake(id, magnitude, location, time, updated > 0 ? updated : time, url,
+                    latitude, longitude, depth);
+        }
+    }
+
+}
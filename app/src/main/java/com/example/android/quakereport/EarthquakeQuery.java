@@ -0,0 +1,171 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+import android.util.Log;
+import java.util.Locale;
+
+// filter and sort order of an earthquake list, in the terms of the USGS query parameters
+// answered either by USGS or, when the loaded earthquakes already cover it, by EarthquakeQueryEngine
+public final class EarthquakeQuery {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = EarthquakeQuery.class.getSimpleName();
+
+    // order-by values, see settings_order_by_values in arrays.xml, "-asc" reverses the direction
+    public static final String ORDER_BY_MAGNITUDE = "magnitude";
+    public static final String ORDER_BY_TIME = "time";
+    private static final String ASCENDING_SUFFIX = "-asc";
+
+    private final double mMinMagnitude;
+
+    // Unix epoch milliseconds, 0 for an open end
+    private final long mStartTime;
+    private final long mEndTime;
+
+    // case insensitive substring of the location, null for no text filter
+    private final String mText;
+
+    private final boolean mByTime;
+    private final boolean mAscending;
+
+    // 0 for no limit
+    private final int mLimit;
+
+    // bounding box in degrees, the whole globe unless the query names a region
+    // like the USGS parameters a longitude range may reach past 180 or -180 to cross the antimeridian
+    private final double mMinLatitude;
+    private final double mMaxLatitude;
+    private final double mMinLongitude;
+    private final double mMaxLongitude;
+
+    public EarthquakeQuery(double minMagnitude, long startTime, long endTime, String text, String orderBy, int limit) {
+        this(minMagnitude, startTime, endTime, text, orderBy, limit, -90, 90, -180, 180);
+    }
+
+    public EarthquakeQuery(double minMagnitude, long startTime, long endTime, String text, String orderBy, int limit,
+                           double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+
+        mMinMagnitude = minMagnitude;
+        mStartTime = startTime;
+        mEndTime = endTime;
+        mText = text == null || text.isEmpty() ? null : text;
+        mAscending = orderBy != null && orderBy.endsWith(ASCENDING_SUFFIX);
+        mByTime = orderBy != null && orderBy.startsWith(ORDER_BY_TIME);
+        mLimit = Math.max(limit, 0);
+        mMinLatitude = minLatitude;
+        mMaxLatitude = maxLatitude;
+        mMinLongitude = minLongitude;
+        mMaxLongitude = maxLongitude;
+    }
+
+    // the query a USGS request url stands for, minmag, starttime, endtime, orderby, limit
+    // and the minlatitude / maxlatitude / minlongitude / maxlongitude box are read
+    public static EarthquakeQuery fromUrl(String url) {
+
+        Uri uri = Uri.parse(url);
+        return new EarthquakeQuery(
+                parseDouble(uri.getQueryParameter("minmag"), 0),
+                ShardedFetcher.parseTime(uri.getQueryParameter("starttime")),
+                ShardedFetcher.parseTime(uri.getQueryParameter("endtime")),
+                null,
+                uri.getQueryParameter("orderby"),
+                (int) parseDouble(uri.getQueryParameter("limit"), 0),
+                parseDouble(uri.getQueryParameter("minlatitude"), -90),
+                parseDouble(uri.getQueryParameter("maxlatitude"), 90),
+                parseDouble(uri.getQueryParameter("minlongitude"), -180),
+                parseDouble(uri.getQueryParameter("maxlongitude"), 180));
+    }
+
+    public double getMinMagnitude() {
+        return mMinMagnitude;
+    }
+
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    public long getEndTime() {
+        return mEndTime;
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    // true when sorted by time, otherwise by magnitude
+    public boolean isByTime() {
+        return mByTime;
+    }
+
+    public boolean isAscending() {
+        return mAscending;
+    }
+
+    public int getLimit() {
+        return mLimit;
+    }
+
+    public double getMinLatitude() {
+        return mMinLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return mMaxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return mMinLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return mMaxLongitude;
+    }
+
+    // true if the bounding box leaves out part of the globe
+    public boolean hasRegion() {
+        return mMinLatitude > -90 || mMaxLatitude < 90 || mMaxLongitude - mMinLongitude < 360;
+    }
+
+    // true if every earthquake matching this query also matches the other one
+    boolean isNarrowerThan(EarthquakeQuery other) {
+
+        return mMinMagnitude >= other.mMinMagnitude
+                && (other.mStartTime == 0 || (mStartTime != 0 && mStartTime >= other.mStartTime))
+                && (other.mEndTime == 0 || (mEndTime != 0 && mEndTime <= other.mEndTime))
+                && (other.mText == null || (mText != null
+                        && mText.toLowerCase(Locale.getDefault()).contains(other.mText.toLowerCase(Locale.getDefault()))))
+                && (!other.hasRegion() || (mMinLatitude >= other.mMinLatitude && mMaxLatitude <= other.mMaxLatitude
+                        && mMinLongitude >= other.mMinLongitude && mMaxLongitude <= other.mMaxLongitude));
+    }
+
+    // true if both queries select and order the same earthquakes
+    boolean isSameAs(EarthquakeQuery other) {
+
+        return mMinMagnitude == other.mMinMagnitude
+                && mStartTime == other.mStartTime
+                && mEndTime == other.mEndTime
+                && (mText == null ? other.mText == null : mText.equalsIgnoreCase(other.mText))
+                && mByTime == other.mByTime
+                && mAscending == other.mAscending
+                && mLimit == other.mLimit
+                && mMinLatitude == other.mMinLatitude
+                && mMaxLatitude == other.mMaxLatitude
+                && mMinLongitude == other.mMinLongitude
+                && mMaxLongitude == other.mMaxLongitude;
+    }
+
+    // query parameter as a number, missing or malformed values count as the default
+    private static double parseDouble(String value, double missing) {
+
+        if (value == null) {
+            return missing;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Problem parsing query parameter " + value, e);
+            return missing;
+        }
+    }
+
+}
@@ -0,0 +1,273 @@
+package com.example.android.quakereport;
+
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+// in-memory filtering and sorting of the last loaded earthquake list
+// EarthquakeLoader asks it first, so a preference change that only narrows or reorders what is already
+// loaded is answered from memory in milliseconds, without the store or another USGS request
+// the loaded query itself is never answered here, loading it again means fetching it again
+// the loaded list is indexed once by setData(): the four USGS orders are kept as pre-sorted arrays
+// of positions, and the filter fields as primitive columns, so a query is a single forward walk of one array
+// a query with a bounding box, such as a region section of EarthquakeDashboard, first looks up the positions
+// inside the box in an EarthquakeGrid over the loaded list, built by the first such query
+public final class EarthquakeQueryEngine {
+
+    // loaded data older than this is no longer trusted to answer for USGS
+    private static final long MAX_AGE_MILLIS = 5 * 60 * 1000;
+
+    // single instance shared by every loader
+    private static EarthquakeQueryEngine sInstance;
+
+    // replaced as a whole, so queries running on other threads keep a consistent view
+    private volatile Index mIndex;
+
+    private EarthquakeQueryEngine() {}
+
+    public static synchronized EarthquakeQueryEngine getInstance() {
+        if (sInstance == null) {
+            sInstance = new EarthquakeQueryEngine();
+        }
+        return sInstance;
+    }
+
+    // index the complete result of a query, call from a background thread, the list must not change afterwards
+    public void setData(EarthquakeQuery query, List<Earthquake> earthquakes) {
+        mIndex = new Index(query, earthquakes);
+    }
+
+    // forget the loaded data, for example after a background sync changed the store
+    public void invalidate() {
+        mIndex = null;
+    }
+
+    // the result of the query computed from the loaded data, or null if the loaded data does not cover it
+    // or the query is the loaded one
+    public List<Earthquake> query(EarthquakeQuery query) {
+
+        Index index = mIndex;
+        if (index == null || SystemClock.elapsedRealtime() - index.mCreatedAt > MAX_AGE_MILLIS) {
+            return null;
+        }
+        return index.query(query);
+    }
+
+    // the loaded list with its sort orders and filter columns
+    private static final class Index {
+
+        private final EarthquakeQuery mQuery;
+        private final List<Earthquake> mEarthquakes;
+        private final long mCreatedAt = SystemClock.elapsedRealtime();
+
+        // true if the loaded query returned fewer rows than its limit, so nothing matching it is missing
+        private final boolean mComplete;
+
+        // filter columns by position
+        private final float[] mMagnitudes;
+        private final long[] mTimes;
+        private final String[] mLocations;
+
+        // spatial index of the loaded list, null until the first query with a region, see grid()
+        private volatile EarthquakeGrid mGrid;
+
+        // positions in the order of each orderby value
+        private final int[] mByMagnitude;
+        private final int[] mByMagnitudeAscending;
+        private final int[] mByTime;
+        private final int[] mByTimeAscending;
+
+        Index(EarthquakeQuery query, List<Earthquake> earthquakes) {
+
+            mQuery = query;
+            mEarthquakes = earthquakes;
+            int size = earthquakes.size();
+            mComplete = query.getLimit() == 0 || size < query.getLimit();
+
+            // an EarthquakeList is read column by column without creating views
+            EarthquakeList columns = earthquakes instanceof EarthquakeList ? (EarthquakeList) earthquakes : null;
+            mMagnitudes = new float[size];
+            mTimes = new long[size];
+            mLocations = new String[size];
+            for (int i = 0; i < size; i++) {
+                if (columns != null) {
+                    mMagnitudes[i] = (float) columns.getMagnitude(i);
+                    mTimes[i] = columns.getTime(i);
+                    mLocations[i] = columns.getLocation(i).toLowerCase(Locale.getDefault());
+                } else {
+                    Earthquake earthquake = earthquakes.get(i);
+                    mMagnitudes[i] = (float) earthquake.getMagnitude();
+                    mTimes[i] = earthquake.getTime();
+                    mLocations[i] = earthquake.getLocation().toLowerCase(Locale.getDefault());
+                }
+            }
+
+            // ties are broken on the other key in descending order whatever the direction of the first,
+            // like the ORDER BY of EarthquakeStore, so both paths return equal rows in the same order
+            mByMagnitude = sortedPositions(size, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int result = Float.compare(mMagnitudes[b], mMagnitudes[a]);
+                    return result != 0 ? result : compareLongs(mTimes[b], mTimes[a]);
+                }
+            });
+            mByMagnitudeAscending = sortedPositions(size, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int result = Float.compare(mMagnitudes[a], mMagnitudes[b]);
+                    return result != 0 ? result : compareLongs(mTimes[b], mTimes[a]);
+                }
+            });
+            mByTime = sortedPositions(size, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int result = compareLongs(mTimes[b], mTimes[a]);
+                    return result != 0 ? result : Float.compare(mMagnitudes[b], mMagnitudes[a]);
+                }
+            });
+            mByTimeAscending = sortedPositions(size, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int result = compareLongs(mTimes[a], mTimes[b]);
+                    return result != 0 ? result : Float.compare(mMagnitudes[b], mMagnitudes[a]);
+                }
+            });
+        }
+
+        List<Earthquake> query(EarthquakeQuery query) {
+
+            // the loaded data can only answer a query that selects a subset of it,
+            // the loaded query itself is a reload and goes to the store and the network
+            if (!query.isNarrowerThan(mQuery) || query.isSameAs(mQuery)) {
+                return null;
+            }
+
+            // a limited result is only complete ahead of its last row in its own order
+            boolean sameOrder = query.isByTime() == mQuery.isByTime() && query.isAscending() == mQuery.isAscending();
+            if (!mComplete && !sameOrder) {
+                return null;
+            }
+
+            int[] order = query.isByTime()
+                    ? (query.isAscending() ? mByTimeAscending : mByTime)
+                    : (query.isAscending() ? mByMagnitudeAscending : mByMagnitude);
+            int size = order.length;
+
+            // sort key of the last loaded row, rows beyond it may be missing
+            int cutoff = size == 0 ? -1 : order[size - 1];
+
+            String text = query.getText() == null ? null : query.getText().toLowerCase(Locale.getDefault());
+            boolean[] inRegion = query.hasRegion() ? inRegion(query) : null;
+
+            // magnitudes are parsed as floats, an M4.1 event holds 4.0999999..., so minmag is rounded the
+            // same way or the events at exactly minmag, which USGS returns, would be dropped
+            float minMagnitude = (float) query.getMinMagnitude();
+            int limit = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+            List<Earthquake> result = new ArrayList<>(Math.min(limit, size));
+
+            for (int i = 0; i < size && result.size() < limit; i++) {
+                int position = order[i];
+
+                if (mMagnitudes[position] < minMagnitude
+                        || (query.getStartTime() != 0 && mTimes[position] < query.getStartTime())
+                        || (query.getEndTime() != 0 && mTimes[position] > query.getEndTime())
+                        || (text != null && !mLocations[position].contains(text))
+                        || (inRegion != null && !inRegion[position])) {
+                    continue;
+                }
+
+                // a match level with the last loaded row could be preceded by rows that were never loaded
+                if (!mComplete && !isBefore(query, position, cutoff)) {
+                    return null;
+                }
+                result.add(mEarthquakes.get(position));
+            }
+
+            // short of the limit, rows that were never loaded could still match unless the query rules them out
+            if (!mComplete && result.size() < limit && !excludesBeyond(query, cutoff)) {
+                return null;
+            }
+            return result;
+        }
+
+        // positions inside the bounding box of the query, earthquakes without coordinates are never inside
+        private boolean[] inRegion(EarthquakeQuery query) {
+
+            // a longitude range past the antimeridian becomes a box whose west edge is east of its east edge
+            double west = query.getMinLongitude();
+            double east = query.getMaxLongitude();
+            if (east - west < 360) {
+                west = west < -180 ? west + 360 : west;
+                east = east > 180 ? east - 360 : east;
+            } else {
+                west = -180;
+                east = 180;
+            }
+
+            boolean[] inRegion = new boolean[mMagnitudes.length];
+            for (int position : grid().queryBoundingBoxPositions(
+                    query.getMinLatitude(), west, query.getMaxLatitude(), east)) {
+                inRegion[position] = true;
+            }
+            return inRegion;
+        }
+
+        // queries on other threads may each build the grid once, either one serves, the list never changes
+        private EarthquakeGrid grid() {
+
+            EarthquakeGrid grid = mGrid;
+            if (grid == null) {
+                grid = new EarthquakeGrid(mEarthquakes);
+                mGrid = grid;
+            }
+            return grid;
+        }
+
+        // true if the row strictly precedes the cutoff row in the query's order
+        private boolean isBefore(EarthquakeQuery query, int position, int cutoff) {
+
+            int result = query.isByTime()
+                    ? compareLongs(mTimes[position], mTimes[cutoff])
+                    : Float.compare(mMagnitudes[position], mMagnitudes[cutoff]);
+            return query.isAscending() ? result < 0 : result > 0;
+        }
+
+        // true if no row at or beyond the cutoff row can match the query
+        private boolean excludesBeyond(EarthquakeQuery query, int cutoff) {
+
+            if (cutoff < 0) {
+                return false;
+            }
+            if (query.isByTime()) {
+                return query.isAscending()
+                        ? query.getEndTime() != 0 && query.getEndTime() < mTimes[cutoff]
+                        : query.getStartTime() != 0 && query.getStartTime() > mTimes[cutoff];
+            }
+            return !query.isAscending() && (float) query.getMinMagnitude() > mMagnitudes[cutoff];
+        }
+
+        private static int[] sortedPositions(int size, Comparator<Integer> comparator) {
+
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = i;
+            }
+            Arrays.sort(boxed, comparator);
+
+            int[] positions = new int[size];
+            for (int i = 0; i < size; i++) {
+                positions[i] = boxed[i];
+            }
+            return positions;
+        }
+
+        // Long.compare() needs API 19
+        private static int compareLongs(long a, long b) {
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+// binary copy of the last list the loader delivered, read on the UI thread when EarthquakeActivity starts
+// so rows are on screen in the first frame, before the loader has touched the database or the network
+// the file is memory mapped and decoded by EarthquakeCodec straight into an EarthquakeList, no parsing of text
+public final class EarthquakeSnapshot {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = EarthquakeSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "earthquakes.snapshot";
+
+    // "QRKS" followed by the layout version, a file with any other header is ignored
+    private static final int MAGIC = 0x51524b53;
+    private static final int VERSION = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // constructor is deliberately empty as no objects of this class will ever exist
+    private EarthquakeSnapshot() {}
+
+    // replace the snapshot with this list, call from a background thread
+    // layout: header, query url, then the list as one EarthquakeCodec batch
+    public static void write(Context context, String queryUrl, List<Earthquake> earthquakes) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + earthquakes.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, queryUrl);
+
+            out.write(EarthquakeCodec.encode(earthquakes));
+            out.flush();
+
+            // write next to the old file and rename, a reader never sees a half written snapshot
+            File file = getFile(context);
+            File temp = new File(file.getPath() + ".tmp");
+            FileOutputStream fileOut = new FileOutputStream(temp);
+            try {
+                bytes.writeTo(fileOut);
+                fileOut.getFD().sync();
+            } finally {
+                fileOut.close();
+            }
+            if (!temp.renameTo(file)) {
+                Log.e(LOG_TAG, "Problem replacing the earthquake snapshot.");
+            }
+
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the earthquake snapshot.", e);
+        }
+    }
+
+    // the snapshot for this query url, or an empty list if there is none or it belongs to another query
+    // small enough to read on the UI thread, decoding is lazy so even a large snapshot costs one pass of varints
+    public static List<Earthquake> read(Context context, String queryUrl) {
+
+        File file = getFile(context);
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !queryUrl.equals(readString(buffer))) {
+                return Collections.emptyList();
+            }
+
+            // only the rows on screen have their Strings decoded, the rest stay in the mapped file
+            return EarthquakeCodec.decodeLazy(buffer);
+
+        // a truncated or corrupt file only costs the fast start, the loader fills the list anyway
+        } catch (IOException | BufferUnderflowException e) {
+            Log.e(LOG_TAG, "Problem reading the earthquake snapshot.", e);
+            return Collections.emptyList();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing the earthquake snapshot.", e);
+                }
+            }
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    // length prefixed UTF-8, a length of -1 stands for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+}
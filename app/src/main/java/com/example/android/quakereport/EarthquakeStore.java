@@ -0,0 +1,280 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+import com.example.android.quakereport.EarthquakeContract.SyncEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// local database of earthquake events, read first by EarthquakeLoader and filled by network fetches
+public final class EarthquakeStore {
+
+    // single instance shared by every loader, SQLiteOpenHelper serializes access to the database
+    private static EarthquakeStore sInstance;
+
+    // order-by preference value for most recent first, anything else orders by magnitude
+    private static final String ORDER_BY_TIME = "time";
+
+    // USGS answers a query without starttime with the events of the last 30 days
+    static final long QUERY_WINDOW_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    private final EarthquakeDbHelper mDbHelper;
+
+    private EarthquakeStore(Context context) {
+        mDbHelper = new EarthquakeDbHelper(context);
+    }
+
+    // application context is used so that no activity is leaked
+    public static synchronized EarthquakeStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    // insert or replace every earthquake of the batch in a single transaction
+    // earthquakes without a USGS event id cannot be keyed and are skipped
+    public void upsert(List<Earthquake> earthquakes) {
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        // one compiled statement bound per row is much cheaper than ContentValues
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + EarthquakeEntry.TABLE_NAME + " ("
+                + EarthquakeEntry.COLUMN_EVENT_ID + ", "
+                + EarthquakeEntry.COLUMN_MAGNITUDE + ", "
+                + EarthquakeEntry.COLUMN_LOCATION + ", "
+                + EarthquakeEntry.COLUMN_TIME + ", "
+                + EarthquakeEntry.COLUMN_UPDATED + ", "
+                + EarthquakeEntry.COLUMN_URL + ", "
+                + EarthquakeEntry.COLUMN_LATITUDE + ", "
+                + EarthquakeEntry.COLUMN_LONGITUDE + ", "
+                + EarthquakeEntry.COLUMN_DEPTH + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+        db.beginTransaction();
+        try {
+            for (Earthquake earthquake : earthquakes) {
+                if (earthquake.getId() == null) {
+                    continue;
+                }
+                statement.clearBindings();
+                statement.bindString(1, earthquake.getId());
+                statement.bindDouble(2, earthquake.getMagnitude());
+                statement.bindString(3, earthquake.getLocation());
+                statement.bindLong(4, earthquake.getTime());
+                statement.bindLong(5, earthquake.getUpdated());
+                statement.bindString(6, earthquake.getUrl());
+                bindCoordinate(statement, 7, earthquake.getLatitude());
+                bindCoordinate(statement, 8, earthquake.getLongitude());
+                bindCoordinate(statement, 9, earthquake.getDepth());
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    // remove the events with these USGS event ids in a single transaction, unknown ids are ignored
+    public void delete(Collection<String> eventIds) {
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("DELETE FROM " + EarthquakeEntry.TABLE_NAME
+                + " WHERE " + EarthquakeEntry.COLUMN_EVENT_ID + " = ?");
+
+        db.beginTransaction();
+        try {
+            for (String eventId : eventIds) {
+                statement.bindString(1, eventId);
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    // remove the events that have left the USGS query window, returns true if any were removed
+    // the rows that move up into a limited query once they are gone were never fetched, so every
+    // watermark is cleared with them and the next sync fetches each query in full again
+    public boolean prune() {
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int removed = db.delete(EarthquakeEntry.TABLE_NAME, EarthquakeEntry.COLUMN_TIME + " < ?",
+                    new String[] { String.valueOf(windowStart()) });
+            if (removed > 0) {
+                db.delete(SyncEntry.TABLE_NAME, null, null);
+            }
+            db.setTransactionSuccessful();
+            return removed > 0;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // earthquakes with at least the given magnitude within the USGS query window,
+    // ordered like the USGS orderby parameter, served from the magnitude and time indexes
+    // rows older than the window are left out even before prune() removes them, USGS no longer returns them
+    public List<Earthquake> query(double minMagnitude, String orderBy, int limit) {
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(EarthquakeEntry.TABLE_NAME,
+                new String[] {
+                        EarthquakeEntry.COLUMN_EVENT_ID,
+                        EarthquakeEntry.COLUMN_MAGNITUDE,
+                        EarthquakeEntry.COLUMN_LOCATION,
+                        EarthquakeEntry.COLUMN_TIME,
+                        EarthquakeEntry.COLUMN_UPDATED,
+                        EarthquakeEntry.COLUMN_URL,
+                        EarthquakeEntry.COLUMN_LATITUDE,
+                        EarthquakeEntry.COLUMN_LONGITUDE,
+                        EarthquakeEntry.COLUMN_DEPTH },
+                EarthquakeEntry.COLUMN_MAGNITUDE + " >= ? AND " + EarthquakeEntry.COLUMN_TIME + " >= ?",
+                new String[] { String.valueOf(magnitudeThreshold(minMagnitude)), String.valueOf(windowStart()) },
+                null,
+                null,
+                sortOrder(orderBy),
+                limit > 0 ? String.valueOf(limit) : null);
+
+        try {
+
+            // large catalogue queries are kept in primitive columns instead of one object per row
+            if (cursor.getCount() > EarthquakeList.COLUMNAR_THRESHOLD) {
+                EarthquakeList.Builder builder = new EarthquakeList.Builder(cursor.getCount());
+                while (cursor.moveToNext()) {
+                    builder.add(
+                            cursor.getString(0),
+                            cursor.getDouble(1),
+                            cursor.getString(2),
+                            cursor.getLong(3),
+                            cursor.getLong(4),
+                            cursor.getString(5),
+                            getCoordinate(cursor, 6),
+                            getCoordinate(cursor, 7),
+                            getCoordinate(cursor, 8));
+                }
+                return builder.build();
+            }
+
+            while (cursor.moveToNext()) {
+                earthquakes.add(new Earthquake(
+                        cursor.getString(0),
+                        cursor.getDouble(1),
+                        cursor.getString(2),
+                        cursor.getLong(3),
+                        cursor.getLong(4),
+                        cursor.getString(5),
+                        getCoordinate(cursor, 6),
+                        getCoordinate(cursor, 7),
+                        getCoordinate(cursor, 8)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return earthquakes;
+    }
+
+    // newest update time already synced for a query url, 0 if the query was never fetched
+    public long getLastUpdated(String queryUrl) {
+
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(SyncEntry.TABLE_NAME,
+                new String[] { SyncEntry.COLUMN_LAST_UPDATED },
+                SyncEntry.COLUMN_QUERY_URL + " = ?",
+                new String[] { queryUrl },
+                null,
+                null,
+                null,
+                null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // remember the newest update time seen in a response to a query url, unless the watermark is no
+    // longer the one the fetch started from, for example because prune() cleared it meanwhile
+    public void setLastUpdated(String queryUrl, long previous, long lastUpdated) {
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + SyncEntry.TABLE_NAME + " ("
+                + SyncEntry.COLUMN_QUERY_URL + ", "
+                + SyncEntry.COLUMN_LAST_UPDATED + ") VALUES (?, ?)");
+        db.beginTransaction();
+        try {
+            if (getLastUpdated(queryUrl) == previous) {
+                statement.bindString(1, queryUrl);
+                statement.bindLong(2, lastUpdated);
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    // forget how far a query url has synced, its next fetch is a full one
+    public void clearLastUpdated(String queryUrl) {
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.delete(SyncEntry.TABLE_NAME, SyncEntry.COLUMN_QUERY_URL + " = ?", new String[] { queryUrl });
+    }
+
+    // minmag as the stored magnitudes are rounded, EarthquakeParser reads every magnitude as a float,
+    // so an M4.1 event is stored as 4.0999999..., below the double 4.1 that USGS itself still includes
+    static double magnitudeThreshold(double minMagnitude) {
+        return (double) (float) minMagnitude;
+    }
+
+    // oldest event time USGS returns for a query without starttime
+    private static long windowStart() {
+        return System.currentTimeMillis() - QUERY_WINDOW_MILLIS;
+    }
+
+    // unknown coordinates are NaN in memory and NULL in the database
+    private static void bindCoordinate(SQLiteStatement statement, int index, double value) {
+
+        if (Double.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    private static double getCoordinate(Cursor cursor, int index) {
+        return cursor.isNull(index) ? Double.NaN : cursor.getDouble(index);
+    }
+
+    // translate the order-by preference, for example "time-asc", into an SQL ORDER BY clause
+    private static String sortOrder(String orderBy) {
+
+        // USGS sorts descending unless the value ends with "-asc"
+        String direction = " DESC";
+        if (orderBy != null && orderBy.endsWith("-asc")) {
+            direction = " ASC";
+            orderBy = orderBy.substring(0, orderBy.length() - "-asc".length());
+        }
+
+        // magnitude is the default preference
+        String column = ORDER_BY_TIME.equals(orderBy) ? EarthquakeEntry.COLUMN_TIME : EarthquakeEntry.COLUMN_MAGNITUDE;
+
+        // break ties on the other indexed column so the order is stable
+        String tieBreaker = ORDER_BY_TIME.equals(orderBy) ? EarthquakeEntry.COLUMN_MAGNITUDE : EarthquakeEntry.COLUMN_TIME;
+
+        return column + direction + ", " + tieBreaker + " DESC";
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// fetches a query into the local store, shared by EarthquakeLoader and EarthquakeSyncService
+// so the foreground load and the background sync move the watermark of a query url the same way
+// after the first fetch of a query only the events revised since its watermark are asked for, all of them,
+// the watermark moves past a revision only once it is stored
+public final class EarthquakeSync {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = EarthquakeSync.class.getSimpleName();
+
+    // the most events USGS returns for one request
+    private static final int MAX_ROWS_PER_REQUEST = 20000;
+
+    // receives every batch once it is stored, on a fetching thread, calls are serialized
+    public interface OnBatchStoredListener {
+        void onBatchStored(List<Earthquake> batch, RequestCoalescer.Request request);
+    }
+
+    // constructor is deliberately empty as no objects of this class will ever exist
+    private EarthquakeSync() {}
+
+    // fetch the query into the store, call from a background thread, the listener may be null
+    // callers syncing the same query share one fetch, a query synced moments ago is not fetched again,
+    // and a fetch for different minmag or orderby values cancels the one still running
+    // returns false if the fetch failed, also for a caller that joined it, a fetch superseded by a newer
+    // query of its group is not a failure
+    public static boolean sync(Context context, final String url, final OnBatchStoredListener listener) {
+
+        final EarthquakeStore store = EarthquakeStore.getInstance(context);
+
+        // a failure is recorded on the shared request, so callers that joined it see it as well
+        return RequestCoalescer.execute(url, queryGroup(Uri.parse(url)), new RequestCoalescer.Fetch() {
+            @Override
+            public void run(final RequestCoalescer.Request request) {
+
+                // events that left the query window are dropped first, possibly with the watermark
+                store.prune();
+                long lastUpdated = store.getLastUpdated(url);
+
+                // newest update time seen in this response, element 0 is written by the listener below
+                final long[] newestUpdated = { lastUpdated };
+
+                // each parsed batch is upserted by event id in its own transaction while the download continues
+                EarthquakeParser.OnBatchParsedListener storingListener = new EarthquakeParser.OnBatchParsedListener() {
+                    @Override
+                    public void onBatchParsed(List<Earthquake> batch) {
+                        store.upsert(batch);
+                        for (Earthquake earthquake : batch) {
+                            newestUpdated[0] = Math.max(newestUpdated[0], earthquake.getUpdated());
+                        }
+                        if (listener != null) {
+                            listener.onBatchStored(batch, request);
+                        }
+                    }
+                };
+
+                // the first fetch is the query itself, its time window, by default the last 30 days, in parallel
+                // time shards, after that only the events revised since the last fetch of this query
+                try {
+                    if (lastUpdated > 0) {
+                        fetchRevisions(url, lastUpdated, storingListener, request);
+                    } else {
+                        ShardedFetcher.fetch(url, storingListener, request);
+                    }
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem syncing the earthquake JSON results.", e);
+                    request.setFailed();
+                    return;
+                }
+
+                // advance the watermark only once the events it covers are stored,
+                // a cancelled fetch may have stopped before some of them arrived
+                if (!request.isCancelled() && newestUpdated[0] > lastUpdated) {
+                    store.setLastUpdated(url, lastUpdated, newestUpdated[0]);
+
+                    // the store changed, the list held in memory no longer matches it
+                    EarthquakeQueryEngine.getInstance().invalidate();
+                }
+            }
+        });
+    }
+
+    // every event matching the query that was revised after the watermark, whatever the query's limit
+    // the limit caps a response at the top rows of the query's order, the watermark would then move past the
+    // revised events beyond them, so revisions are read by time in pages of MAX_ROWS_PER_REQUEST until
+    // a short page shows none are left
+    // a full page without a single new event also ends it, so a server that ignores offset cannot loop forever
+    private static void fetchRevisions(String url, long updatedAfter, EarthquakeParser.OnBatchParsedListener listener,
+                                       RequestCoalescer.Request request) throws IOException {
+
+        String revisionsUrl = QueryUtils.appendUpdatedAfter(
+                QueryUtils.replaceQueryParameters(url, "orderby", "time-asc"), updatedAfter);
+
+        Set<String> eventIds = new HashSet<>();
+        int offset = 1;
+        while (!request.isCancelled()) {
+            String pageUrl = QueryUtils.replaceQueryParameters(revisionsUrl,
+                    "offset", String.valueOf(offset), "limit", String.valueOf(MAX_ROWS_PER_REQUEST));
+            List<Earthquake> page = QueryUtils.fetchEarthquakeDataOrThrow(pageUrl, listener, request);
+
+            boolean anyNew = false;
+            for (Earthquake earthquake : page) {
+                anyNew |= eventIds.add(earthquake.getId());
+            }
+            if (page.size() < MAX_ROWS_PER_REQUEST || !anyNew) {
+                return;
+            }
+            offset += page.size();
+        }
+    }
+
+    // queries that differ only in minmag, orderby or limit replace one another
+    static String queryGroup(Uri uri) {
+
+        Uri.Builder uriBuilder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (!name.equals("minmag") && !name.equals("orderby") && !name.equals("limit")) {
+                uriBuilder.appendQueryParameter(name, uri.getQueryParameter(name));
+            }
+        }
+        return uriBuilder.toString();
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.content.WakefulBroadcastReceiver;
+
+// wakes the device for EarthquakeSyncService
+// receives the sync alarms, the charger being plugged in, and boot, after which alarms have to be set again
+public class EarthquakeSyncReceiver extends WakefulBroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+
+        // alarms do not survive a reboot
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            EarthquakeSyncService.schedule(context);
+            return;
+        }
+
+        // the service releases the wake lock when the sync is done
+        Intent service = new Intent(context, EarthquakeSyncService.class).setAction(intent.getAction());
+        startWakefulService(context, service);
+    }
+
+}
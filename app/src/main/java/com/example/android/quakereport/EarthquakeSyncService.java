@@ -0,0 +1,165 @@
+package com.example.android.quakereport;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+// refreshes the local earthquake store in the background so EarthquakeActivity opens on fresh rows
+// runs the same query as the activity, built from the user's minmag and orderby preferences,
+// only while charging or on an unmetered network, and backs off exponentially after failed fetches
+// JobScheduler needs API 21, so repeating inexact alarms let the system batch the work with other wakeups
+public class EarthquakeSyncService extends IntentService {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = EarthquakeSyncService.class.getSimpleName();
+
+    // broadcast sent by the repeating alarm and by the backoff retry alarm
+    static final String ACTION_SYNC = "com.example.android.quakereport.action.SYNC";
+
+    // first retry after a failure, doubled for each further failure up to the sync interval
+    private static final long BACKOFF_BASE_MILLIS = 30 * 1000;
+    private static final int BACKOFF_MAX_EXPONENT = 10;
+
+    // sync bookkeeping lives apart from the user preferences so it never triggers their listeners
+    private static final String SYNC_PREFERENCES = "sync_state";
+    private static final String KEY_FAILURES = "failures";
+    private static final String KEY_LAST_SUCCESS = "last_success";
+
+    // alarm request codes, the retry must not replace the repeating alarm
+    private static final int REQUEST_REPEATING = 0;
+    private static final int REQUEST_RETRY = 1;
+
+    public EarthquakeSyncService() {
+        super(EarthquakeSyncService.class.getSimpleName());
+    }
+
+    // (re)schedule the repeating alarm for the interval preference, an interval of 0 turns sync off
+    // called on app start, when the preference changes and after a reboot
+    public static void schedule(Context context) {
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent repeating = syncPendingIntent(context, REQUEST_REPEATING);
+
+        long interval = getSyncInterval(context);
+        if (interval <= 0) {
+            alarmManager.cancel(repeating);
+            alarmManager.cancel(syncPendingIntent(context, REQUEST_RETRY));
+            return;
+        }
+
+        // inexact so the system can align the wakeup with other apps, replaces any earlier schedule
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + interval, interval, repeating);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+
+        try {
+
+            // sync may have been turned off after the alarm fired
+            long interval = getSyncInterval(this);
+            if (interval <= 0) {
+                return;
+            }
+
+            // plugging in the charger only syncs when the last sync is older than the interval
+            SharedPreferences syncState = getSharedPreferences(SYNC_PREFERENCES, Context.MODE_PRIVATE);
+            if (intent != null && Intent.ACTION_POWER_CONNECTED.equals(intent.getAction())
+                    && System.currentTimeMillis() - syncState.getLong(KEY_LAST_SUCCESS, 0) < interval) {
+                return;
+            }
+
+            // wait for a better moment, the next alarm or the charger will try again
+            if (!isConnected() || !(isCharging() || isUnmetered())) {
+                return;
+            }
+
+            if (sync()) {
+                syncState.edit()
+                        .putInt(KEY_FAILURES, 0)
+                        .putLong(KEY_LAST_SUCCESS, System.currentTimeMillis())
+                        .apply();
+            } else {
+                int failures = syncState.getInt(KEY_FAILURES, 0) + 1;
+                syncState.edit().putInt(KEY_FAILURES, failures).apply();
+                scheduleRetry(failures, interval);
+            }
+
+        } finally {
+
+            // release the wake lock taken by EarthquakeSyncReceiver
+            if (intent != null) {
+                EarthquakeSyncReceiver.completeWakefulIntent(intent);
+            }
+        }
+    }
+
+    // fetch the current query into the store, returns false if the fetch failed
+    // an activity loading the same query shares this fetch, a query loaded moments ago is not fetched again
+    private boolean sync() {
+        return EarthquakeSync.sync(this, EarthquakeActivity.buildQueryUrl(this), null);
+    }
+
+    // one-shot alarm after BACKOFF_BASE_MILLIS * 2^(failures - 1), never later than the next regular sync
+    private void scheduleRetry(int failures, long interval) {
+
+        long delay = Math.min(BACKOFF_BASE_MILLIS << Math.min(failures - 1, BACKOFF_MAX_EXPONENT), interval);
+
+        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + delay,
+                syncPendingIntent(this, REQUEST_RETRY));
+    }
+
+    private boolean isConnected() {
+
+        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
+        return activeNetwork != null && activeNetwork.isConnected();
+    }
+
+    private boolean isUnmetered() {
+
+        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        return !ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    // the battery broadcast is sticky, registering a null receiver just reads its last value
+    private boolean isCharging() {
+
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    // interval preference in milliseconds, 0 when sync is off
+    private static long getSyncInterval(Context context) {
+
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String interval = sharedPrefs.getString(context.getString(R.string.settings_sync_interval_key),
+                context.getString(R.string.settings_sync_interval_default));
+        try {
+            return Long.parseLong(interval) * 60 * 1000; // minutes to milliseconds
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Problem parsing sync interval " + interval, e);
+            return 0;
+        }
+    }
+
+    private static PendingIntent syncPendingIntent(Context context, int requestCode) {
+
+        Intent intent = new Intent(context, EarthquakeSyncReceiver.class).setAction(ACTION_SYNC);
+        return PendingIntent.getBroadcast(context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// measures fetch-to-list latency through the whole EarthquakeLoader path:
+// local store, HTTP cache, download, streaming parse, upsert and formatting
+// point the app at MockUsgsServer (see app/build.gradle) to measure under controlled network conditions
+public class FetchLatencyHarness {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = FetchLatencyHarness.class.getSimpleName();
+
+    // number of loads used by the debug menu
+    public static final int DEFAULT_ITERATIONS = 20;
+
+    private final Context mContext;
+    private final String mUrl;
+
+    public FetchLatencyHarness(Context context, String url) {
+        mContext = context.getApplicationContext();
+        mUrl = url;
+    }
+
+    // run the loads back to back on the calling thread, which must not be the UI thread
+    public Result run(int iterations) {
+
+        long[] latencies = new long[iterations];
+        int earthquakes = 0;
+
+        for (int i = 0; i < iterations; i++) {
+
+            // a fresh loader per iteration, exactly like onCreateLoader() creates one
+            // every iteration after the first would otherwise be answered without a full fetch, from the
+            // list held in memory, by the request layer, or as an updatedafter delta of a few rows
+            EarthquakeLoader loader = new EarthquakeLoader(mContext, mUrl);
+            EarthquakeQueryEngine.getInstance().invalidate();
+            RequestCoalescer.invalidate(mUrl);
+            EarthquakeStore.getInstance(mContext).clearLastUpdated(mUrl);
+
+            long start = SystemClock.elapsedRealtime();
+            List<Earthquake> result = loader.loadInBackground();
+            latencies[i] = SystemClock.elapsedRealtime() - start;
+
+            earthquakes = result == null ? 0 : result.size();
+        }
+
+        Result result = new Result(latencies, earthquakes);
+        Log.i(LOG_TAG, mUrl + " " + result);
+        return result;
+    }
+
+    // latency percentiles of one run, in milliseconds
+    public static final class Result {
+
+        public final int iterations;
+        public final long p50;
+        public final long p99;
+        public final long min;
+        public final long max;
+
+        // size of the list returned by the last load
+        public final int earthquakes;
+
+        Result(long[] latencies, int earthquakes) {
+
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+
+            this.iterations = sorted.length;
+            this.p50 = percentile(sorted, 50);
+            this.p99 = percentile(sorted, 99);
+            this.min = sorted.length > 0 ? sorted[0] : 0;
+            this.max = sorted.length > 0 ? sorted[sorted.length - 1] : 0;
+            this.earthquakes = earthquakes;
+        }
+
+        // nearest-rank percentile of a sorted array
+        private static long percentile(long[] sorted, int percentile) {
+
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d loads of %d earthquakes\np50 %d ms\np99 %d ms\nmin %d ms, max %d ms",
+                    iterations, earthquakes, p50, p99, min, max);
+        }
+    }
+
+}
@@ -0,0 +1,346 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// live mode of EarthquakeActivity, a subscription to a server-sent events stream of earthquake changes
+// each change is one event: "insert" and "update" carry a GeoJSON feature as data, "delete" the event id
+// changes are keyed by event id and coalesced, the listener receives at most one patch per COALESCE_MILLIS
+// on the UI thread, and the store is patched the same way, so the list is never fetched or parsed again
+// a dropped stream reconnects with the Last-Event-ID of the last delivered change, and the server replays
+// the rest, changes are idempotent by event id so a replay never duplicates a row
+public final class LiveFeed {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = LiveFeed.class.getSimpleName();
+
+    // changes arriving within this window reach the list in a single frame
+    private static final long COALESCE_MILLIS = 250;
+
+    // the server sends a comment line at least this often, a longer silence means the connection is gone
+    private static final int READ_TIMEOUT_MILLIS = 45000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+
+    // delay before reconnecting unless the server asks for another one with "retry:",
+    // a random part spreads the clients of a restarted server
+    private static final long DEFAULT_RETRY_MILLIS = 3000;
+
+    // receives the coalesced changes on the UI thread
+    public interface OnPatchListener {
+
+        // upserts are new or revised earthquakes, in arrival order, deletedIds never overlap with them
+        void onPatch(List<Earthquake> upserts, Set<String> deletedIds);
+    }
+
+    // single instance, so the last event id survives the activity
+    private static LiveFeed sInstance;
+
+    private final EarthquakeStore mStore;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // changes not yet delivered by event id, a null value is a deletion, guarded by this
+    private Map<String, Earthquake> mPending = new LinkedHashMap<>();
+    private boolean mFlushScheduled;
+
+    // stream id of the last pending change, becomes mLastEventId once it is delivered, guarded by this
+    private String mPendingLastEventId;
+
+    // current subscription, null while stopped, guarded by this
+    private Subscription mSubscription;
+    private OnPatchListener mListener;
+
+    // stream id of the last delivered change, sent as Last-Event-ID on every reconnect
+    private volatile String mLastEventId;
+
+    private LiveFeed(Context context) {
+        mStore = EarthquakeStore.getInstance(context);
+    }
+
+    // application context is used so that no activity is leaked
+    public static synchronized LiveFeed getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LiveFeed(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    // true if a live stream is configured for this build, see app/build.gradle
+    public static boolean isAvailable() {
+        return !BuildConfig.USGS_LIVE_URL.isEmpty();
+    }
+
+    // subscribe, replacing any running subscription, call on the UI thread
+    public synchronized void start(OnPatchListener listener) {
+
+        stop();
+        mListener = listener;
+        mSubscription = new Subscription(BuildConfig.USGS_LIVE_URL);
+        mSubscription.start();
+    }
+
+    // unsubscribe, changes not yet delivered are dropped and replayed by the next subscription, call on the UI thread
+    public synchronized void stop() {
+
+        if (mSubscription != null) {
+            mSubscription.cancel();
+            mSubscription = null;
+        }
+        mListener = null;
+        mPending = new LinkedHashMap<>();
+        mPendingLastEventId = null;
+        mFlushScheduled = false;
+        mMainHandler.removeCallbacks(mFlush);
+    }
+
+    // record one change, the first change after a delivery schedules the next one
+    private synchronized void enqueue(Subscription subscription, String eventId, Earthquake earthquake,
+                                      String streamId) {
+
+        // a subscription that was stopped may still be finishing a read
+        if (subscription != mSubscription) {
+            return;
+        }
+
+        // re-inserted at the end, so the order of the patch follows the order of the latest changes
+        mPending.remove(eventId);
+        mPending.put(eventId, earthquake);
+        if (streamId != null) {
+            mPendingLastEventId = streamId;
+        }
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mMainHandler.postDelayed(mFlush, COALESCE_MILLIS);
+        }
+    }
+
+    // hands the coalesced changes to the listener, and to the store on a background thread
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+
+            Map<String, Earthquake> pending;
+            OnPatchListener listener;
+            synchronized (LiveFeed.this) {
+                pending = mPending;
+                mPending = new LinkedHashMap<>();
+                mFlushScheduled = false;
+                listener = mListener;
+                if (mPendingLastEventId != null) {
+                    mLastEventId = mPendingLastEventId;
+                    mPendingLastEventId = null;
+                }
+            }
+
+            final List<Earthquake> upserts = new ArrayList<>();
+            final Set<String> deletedIds = new HashSet<>();
+            for (Map.Entry<String, Earthquake> entry : pending.entrySet()) {
+                if (entry.getValue() != null) {
+                    upserts.add(entry.getValue());
+                } else {
+                    deletedIds.add(entry.getKey());
+                }
+            }
+
+            // patches are applied in order on the serial executor, the list held in memory then no longer matches
+            AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!upserts.isEmpty()) {
+                        mStore.upsert(upserts);
+                    }
+                    if (!deletedIds.isEmpty()) {
+                        mStore.delete(deletedIds);
+                    }
+                    EarthquakeQueryEngine.getInstance().invalidate();
+                }
+            });
+
+            if (listener != null) {
+                listener.onPatch(upserts, deletedIds);
+            }
+        }
+    };
+
+    // one connection loop on its own thread, reconnecting until cancelled
+    private final class Subscription extends Thread {
+
+        private final String mUrl;
+        private volatile boolean mCancelled;
+
+        // open connection, disconnected by cancel() to unblock a read
+        private volatile HttpURLConnection mConnection;
+
+        // server requested reconnect delay
+        private long mRetryMillis = DEFAULT_RETRY_MILLIS;
+
+        Subscription(String url) {
+            super("LiveFeed");
+            mUrl = url;
+        }
+
+        void cancel() {
+
+            mCancelled = true;
+            interrupt();
+            HttpURLConnection connection = mConnection;
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        @Override
+        public void run() {
+
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            while (!mCancelled) {
+                try {
+                    if (!subscribe()) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    if (!mCancelled) {
+                        Log.e(LOG_TAG, "Problem reading the live earthquake stream.", e);
+                    }
+                }
+
+                // wait before reconnecting, cancel() interrupts the wait
+                try {
+                    Thread.sleep(mRetryMillis + (long) (Math.random() * mRetryMillis / 2));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        // read the stream until it ends, returns false if the server asked not to reconnect
+        private boolean subscribe() throws IOException {
+
+            HttpURLConnection connection = (HttpURLConnection) new URL(mUrl).openConnection();
+            mConnection = connection;
+            InputStream inputStream = null;
+            try {
+                connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+                connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+                connection.setUseCaches(false);
+                connection.setRequestProperty("Accept", "text/event-stream");
+                connection.setRequestProperty("Cache-Control", "no-cache");
+                if (mLastEventId != null) {
+                    connection.setRequestProperty("Last-Event-ID", mLastEventId);
+                }
+
+                // 204 No Content is the server's way to end the subscription
+                int responseCode = connection.getResponseCode();
+                if (responseCode == 204) {
+                    return false;
+                }
+                if (responseCode != 200) {
+                    throw new IOException("Error response code: " + responseCode);
+                }
+
+                inputStream = connection.getInputStream();
+                readEvents(new BufferedReader(new InputStreamReader(inputStream, Charset.forName("UTF-8"))));
+                return true;
+
+            } finally {
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+                connection.disconnect();
+                mConnection = null;
+            }
+        }
+
+        // parse the text/event-stream format, fields accumulate until a blank line dispatches the event
+        private void readEvents(BufferedReader reader) throws IOException {
+
+            String eventType = null;
+            String eventId = null;
+            StringBuilder data = new StringBuilder();
+
+            String line;
+            while (!mCancelled && (line = reader.readLine()) != null) {
+
+                if (line.isEmpty()) {
+                    if (data.length() > 0) {
+                        dispatch(eventType, data.toString(), eventId);
+                    }
+                    eventType = null;
+                    eventId = null;
+                    data.setLength(0);
+                    continue;
+                }
+
+                // a comment, sent by the server as a heartbeat
+                if (line.startsWith(":")) {
+                    continue;
+                }
+
+                int colon = line.indexOf(':');
+                String field = colon < 0 ? line : line.substring(0, colon);
+                String value = colon < 0 ? "" : line.substring(line.startsWith(": ", colon) ? colon + 2 : colon + 1);
+                switch (field) {
+                    case "event":
+                        eventType = value;
+                        break;
+                    case "data":
+                        if (data.length() > 0) {
+                            data.append('\n');
+                        }
+                        data.append(value);
+                        break;
+                    case "id":
+                        eventId = value;
+                        break;
+                    case "retry":
+                        try {
+                            mRetryMillis = Long.parseLong(value);
+                        } catch (NumberFormatException e) {
+                            // ignored, like any other unknown value
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        // turn one event into a change, a malformed event is skipped on its own
+        private void dispatch(String eventType, String data, String streamId) {
+
+            if ("delete".equals(eventType)) {
+                enqueue(this, data.trim(), null, streamId);
+                return;
+            }
+            if (!"insert".equals(eventType) && !"update".equals(eventType)) {
+                return;
+            }
+
+            try {
+                Earthquake earthquake = EarthquakeParser.parseFeature(data);
+                if (earthquake != null && earthquake.getId() != null) {
+                    enqueue(this, earthquake.getId(), earthquake, streamId);
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem parsing a live earthquake event.", e);
+            }
+        }
+    }
+
+}
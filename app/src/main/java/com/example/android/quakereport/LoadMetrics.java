@@ -0,0 +1,229 @@
+package com.example.android.quakereport;
+
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+// timings and counters of the load pipeline, from building the query url to binding rows
+// every metric keeps a rolling window of its most recent samples, summarized as percentiles
+// off unless this is a debug build or "adb shell setprop log.tag.LoadMetrics DEBUG" was run,
+// and when off every call returns after reading a single boolean, so the calls stay in release builds
+public final class LoadMetrics {
+
+    // also the tag that turns metrics on in release builds
+    private static final String LOG_TAG = "LoadMetrics";
+
+    // stages in pipeline order, durations in nanoseconds
+    public static final int URL_BUILD = 0;
+    public static final int CONNECT = 1;
+    public static final int FIRST_BYTE = 2;
+    public static final int DOWNLOAD = 3;
+    public static final int PARSE = 4;
+    public static final int BIND = 5;
+    public static final int LOAD = 6;
+
+    // counts per response or per load
+    public static final int BYTES = 7;
+    public static final int FEATURES = 8;
+    public static final int ALLOCATED_BYTES = 9;
+
+    // names used by the dump, indexed by metric
+    private static final String[] NAMES = {
+            "url_build", "connect", "first_byte", "download", "parse", "bind", "load",
+            "bytes", "features", "allocated_bytes" };
+
+    // metrics up to LOAD are durations
+    private static final int LAST_DURATION = LOAD;
+
+    // samples kept per metric
+    private static final int WINDOW = 256;
+
+    private static volatile boolean sEnabled = BuildConfig.DEBUG || Log.isLoggable(LOG_TAG, Log.DEBUG);
+
+    private static final Histogram[] sHistograms = new Histogram[NAMES.length];
+    static {
+        for (int i = 0; i < sHistograms.length; i++) {
+            sHistograms[i] = new Histogram();
+        }
+    }
+
+    // constructor is deliberately empty as no objects of this class will ever exist
+    private LoadMetrics() {}
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    // start of a stage, pass the returned value to stop(), 0 while metrics are off
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    // record the duration of a stage started with start()
+    public static void stop(int metric, long start) {
+        if (start != 0) {
+            sHistograms[metric].add(System.nanoTime() - start);
+        }
+    }
+
+    // record a duration or a count
+    public static void record(int metric, long value) {
+        if (sEnabled) {
+            sHistograms[metric].add(value);
+        }
+    }
+
+    // bytes allocated by the whole process so far, -1 if the runtime does not report it
+    // the difference between two calls approximates what a load allocated
+    public static long allocatedBytes() {
+
+        if (!sEnabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        String allocated = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        try {
+            return allocated == null ? -1 : Long.parseLong(allocated);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // forget every sample
+    public static void reset() {
+        for (Histogram histogram : sHistograms) {
+            histogram.clear();
+        }
+    }
+
+    // one line per metric for the debug screen, durations in milliseconds
+    public static String summary() {
+
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            long[] samples = sHistograms[i].samples();
+            if (samples.length == 0) {
+                continue;
+            }
+            double scale = i <= LAST_DURATION ? 1e-6 : 1;
+            summary.append(String.format(Locale.US, "%s  n=%d  p50 %.1f  p90 %.1f  p99 %.1f  max %.1f%s\n",
+                    NAMES[i], sHistograms[i].count(),
+                    percentile(samples, 50) * scale, percentile(samples, 90) * scale,
+                    percentile(samples, 99) * scale, samples[samples.length - 1] * scale,
+                    i <= LAST_DURATION ? " ms" : ""));
+        }
+        return summary.length() == 0 ? "No samples" : summary.toString().trim();
+    }
+
+    // the same statistics as a JSON object keyed by metric name, raw nanoseconds and counts,
+    // for example {"parse":{"count":12,"p50":812345,"p90":...,"p99":...,"max":...},...}
+    public static String dump() {
+
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < NAMES.length; i++) {
+            long[] samples = sHistograms[i].samples();
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(NAMES[i]).append("\":{\"count\":").append(sHistograms[i].count());
+            if (samples.length > 0) {
+                json.append(",\"p50\":").append(percentile(samples, 50))
+                        .append(",\"p90\":").append(percentile(samples, 90))
+                        .append(",\"p99\":").append(percentile(samples, 99))
+                        .append(",\"max\":").append(samples[samples.length - 1]);
+            }
+            json.append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    // write the dump to the log, for collection with adb logcat -s LoadMetrics
+    public static void log() {
+        Log.i(LOG_TAG, dump());
+    }
+
+    // nearest rank percentile of sorted samples
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    // the last WINDOW samples of one metric
+    private static final class Histogram {
+
+        private final long[] mSamples = new long[WINDOW];
+        private long mCount;
+
+        synchronized void add(long value) {
+            mSamples[(int) (mCount % WINDOW)] = value;
+            mCount++;
+        }
+
+        synchronized void clear() {
+            mCount = 0;
+        }
+
+        // samples recorded since the start, not only those still in the window
+        synchronized long count() {
+            return mCount;
+        }
+
+        // sorted copy of the samples in the window
+        synchronized long[] samples() {
+            long[] samples = Arrays.copyOf(mSamples, (int) Math.min(mCount, WINDOW));
+            Arrays.sort(samples);
+            return samples;
+        }
+    }
+
+    // response body that counts its bytes and the time spent waiting for them
+    // time inside read() is network time, the rest of the body time is parsing
+    static final class MeteredInputStream extends FilterInputStream {
+
+        private long mBytes;
+        private long mReadNanos;
+
+        MeteredInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int value = super.read();
+            mReadNanos += System.nanoTime() - start;
+            if (value != -1) {
+                mBytes++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, count);
+            mReadNanos += System.nanoTime() - start;
+            if (read > 0) {
+                mBytes += read;
+            }
+            return read;
+        }
+
+        long getBytes() {
+            return mBytes;
+        }
+
+        long getReadNanos() {
+            return mReadNanos;
+        }
+    }
+
+}
@@ -1,18 +1,30 @@
 package com.example.android.quakereport;
 
+import android.content.Context;
+import android.net.Uri;
+import android.net.http.HttpResponseCache;
+import android.os.SystemClock;
 import android.util.Log;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import java.io.BufferedReader;
+import android.util.MalformedJsonException;
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 // helper methods related to requesting and receiving earthquake data from USGS
 public final class QueryUtils {
@@ -20,31 +32,242 @@ public final class QueryUtils {
     // simple tag for log messages
     private static final String LOG_TAG = QueryUtils.class.getSimpleName();
 
+    // size of the buffers used to decompress and to drain the rest of a response
+    private static final int BUFFER_SIZE = 8192;
+
+    // content codings offered to the server, decoded by decodeContent()
+    private static final String CONTENT_ENCODINGS = "gzip, deflate";
+
+    // idle keep-alive connections kept per host, back-to-back loads then skip TCP and TLS setup
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    // the platform connection pool reads its configuration once, before the first connection is made
+    static {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    }
+
+    // on-disk HTTP response cache, keyed by the request URI with least recently used eviction
+    private static final String HTTP_CACHE_DIR = "http";
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024; // bytes
+
+    // a cached response this many seconds past its server freshness is still used without revalidation
+    // older entries are revalidated with If-None-Match / If-Modified-Since and reused on a 304
+    static final int HTTP_CACHE_MAX_STALE = 60; // seconds
+
+    // a fetch, with every retry and resumed download, gives up once this much time has passed
+    // whatever was parsed by then is kept
+    private static final long FETCH_BUDGET_MILLIS = 45000;
+
+    // limits of a single connection, shortened to what is left of the budget
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    // requests made for one fetch, and interrupted bodies continued with a Range request
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_RESUMES = 3;
+
+    // the delay before retry n is a random time below min(RETRY_MAX, RETRY_BASE * 2^n), the random
+    // spread keeps clients that failed together from retrying together
+    private static final long RETRY_BASE_MILLIS = 500;
+    private static final long RETRY_MAX_MILLIS = 8000;
+
     // constructor is deliberately empty as no objects of this class will ever exist
     private QueryUtils() {}
 
-    // query the USGS database and return an ArrayList of Earthquake objects
-    // this is the only public method in this class, , used by AsyncTaskLoader in EarthquakeLoader
-    public static ArrayList<Earthquake> fetchEarthquakeData(String requestUrl) {
+    // install the shared HTTP response cache used by every HttpURLConnection in the process
+    // safe to call more than once, only the first call creates the cache
+    public static void installHttpCache(Context context) {
+
+        // the cache survives activity recreation, it is installed process wide
+        if (HttpResponseCache.getInstalled() != null) {
+            return;
+        }
+
+        File httpCacheDir = new File(context.getCacheDir(), HTTP_CACHE_DIR);
+        try {
+            HttpResponseCache.install(httpCacheDir, HTTP_CACHE_SIZE);
+        } catch (IOException e) {
+
+            // requests still work without a cache, they just always hit the network
+            Log.e(LOG_TAG, "Problem installing the HTTP response cache.", e);
+        }
+    }
+
+    // write the cache journal to disk, call when the app moves to the background
+    public static void flushHttpCache() {
+
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+
+    // add the incremental sync parameter to a query url, USGS then only returns events
+    // created or revised after the given time in Unix epoch milliseconds
+    public static String appendUpdatedAfter(String requestUrl, long updatedAfter) {
+
+        // USGS expects an ISO8601 time, UTC is assumed when no timezone is given
+        SimpleDateFormat isoFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        isoFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        Uri.Builder uriBuilder = Uri.parse(requestUrl).buildUpon();
+        uriBuilder.appendQueryParameter("updatedafter", isoFormatter.format(new Date(updatedAfter)));
+        return uriBuilder.toString();
+    }
+
+    // copy of a query url with parameters set, given as alternating names and values
+    // an earlier value of the same name is replaced, a null value removes the parameter
+    public static String replaceQueryParameters(String requestUrl, String... namesAndValues) {
+
+        Uri uri = Uri.parse(requestUrl);
+        Uri.Builder uriBuilder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (!isReplaced(name, namesAndValues)) {
+                uriBuilder.appendQueryParameter(name, uri.getQueryParameter(name));
+            }
+        }
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            if (namesAndValues[i + 1] != null) {
+                uriBuilder.appendQueryParameter(namesAndValues[i], namesAndValues[i + 1]);
+            }
+        }
+        return uriBuilder.toString();
+    }
+
+    private static boolean isReplaced(String name, String[] namesAndValues) {
+
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (namesAndValues[i].equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // query the USGS database and return a list of Earthquake objects, failures are logged
+    // and whatever was parsed before them is returned, see fetchEarthquakeDataOrThrow() for callers that retry
+    // the list is an EarthquakeList, each feature is added to its columns as soon as it is parsed
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl) {
+        return fetchEarthquakeData(requestUrl, null);
+    }
+
+    // progressive variant, the listener (if not null) receives batches of earthquakes as soon
+    // as they are parsed, the returned list still contains every earthquake of the response
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl, EarthquakeParser.OnBatchParsedListener listener) {
+        return fetchEarthquakeData(requestUrl, listener, null);
+    }
 
-        // transform url string to URL object
-        URL url = createUrl(requestUrl);
+    // cancellable variant, the download stops at the next read once the request is cancelled
+    // and the earthquakes parsed up to that point are returned
+    // a fetch that still fails after its retries also returns what was parsed before the failure
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl, EarthquakeParser.OnBatchParsedListener listener,
+                                                       RequestCoalescer.Request request) {
 
-        // initialize raw JSON string to null
-        String jsonResponse = null;
+        // element 0 is the most complete list parsed by any attempt
+        EarthquakeList[] earthquakes = { new EarthquakeList() };
 
-        // perform HTTP request to the URL and receive a JSON response back
+        // perform HTTP request to the URL and parse the JSON response as it streams in
         try {
-            jsonResponse = makeHttpRequest(url);
+            fetchWithRetries(createUrl(requestUrl), earthquakes, listener, request);
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Error closing input stream.", e);
+
+            // log exception stack trace
+            Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results, keeping "
+                    + earthquakes[0].size() + " parsed earthquakes.", e);
         }
 
-        // extract relevant fields from the JSON response and create a list of Earthquakes
-        ArrayList<Earthquake> earthquakes = extractEarthquakesFromJSON(jsonResponse);
+        // return the list of earthquakes
+        return earthquakes[0];
+    }
 
-        // Return the {@link Event}
-        return earthquakes;
+    // variant for callers that retry, a failed connection or an error response is thrown instead of logged
+    // earthquakes parsed before a failure have already been handed to the listener
+    public static List<Earthquake> fetchEarthquakeDataOrThrow(String requestUrl, EarthquakeParser.OnBatchParsedListener listener,
+                                                              RequestCoalescer.Request request) throws IOException {
+
+        // element 0 is the list parsed by the successful attempt
+        EarthquakeList[] earthquakes = { new EarthquakeList() };
+
+        // transform url string to URL object, perform the HTTP request and parse the JSON response as it streams in
+        fetchWithRetries(createUrl(requestUrl), earthquakes, listener, request);
+        return earthquakes[0];
+    }
+
+    // perform the request until it succeeds, fails for good, or runs out of attempts or budget
+    // element 0 is set to the list of the successful attempt, on failure to the largest partial result
+    // of any attempt, an append-only EarthquakeList is replaced rather than cleared and refilled
+    private static void fetchWithRetries(URL url, EarthquakeList[] earthquakes,
+                                         EarthquakeParser.OnBatchParsedListener listener,
+                                         RequestCoalescer.Request request) throws IOException {
+
+        // if the URL is null then return early
+        if (url == null) {
+            return;
+        }
+
+        long deadline = SystemClock.elapsedRealtime() + FETCH_BUDGET_MILLIS;
+
+        // a retry parses the response again from the start, the listener only hears about events it has not seen
+        EarthquakeParser.OnBatchParsedListener retryListener = listener == null ? null : new UnseenListener(listener);
+
+        for (int attempt = 0; ; attempt++) {
+
+            EarthquakeList attemptEarthquakes = new EarthquakeList();
+            try {
+                makeHttpRequest(url, attemptEarthquakes, retryListener, request, deadline);
+                earthquakes[0] = attemptEarthquakes;
+                return;
+            } catch (IOException e) {
+
+                // keep the most complete partial result
+                if (attemptEarthquakes.size() > earthquakes[0].size()) {
+                    earthquakes[0] = attemptEarthquakes;
+                }
+
+                long delay = retryDelay(attempt);
+                if (attempt + 1 >= MAX_ATTEMPTS || !isRetryable(e)
+                        || (request != null && request.isCancelled())
+                        || SystemClock.elapsedRealtime() + delay >= deadline) {
+                    throw e;
+                }
+                Log.w(LOG_TAG, "Retrying the earthquake request in " + delay + " ms.", e);
+
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+
+                    // the loader was cancelled, keep the interrupt for the caller
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // random delay below the exponential cap of this attempt
+    private static long retryDelay(int attempt) {
+        return (long) (Math.random() * Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << attempt));
+    }
+
+    // network failures and server side errors may pass, a rejected request fails the same way again
+    private static boolean isRetryable(IOException e) {
+
+        if (e instanceof ResponseCodeException) {
+            int responseCode = ((ResponseCodeException) e).getResponseCode();
+            return responseCode >= 500 || responseCode == 408 || responseCode == 429;
+        }
+        return true;
+    }
+
+    // connection limit shortened to the time left before the deadline
+    private static int timeout(int limit, long deadline) throws IOException {
+
+        long remaining = deadline - SystemClock.elapsedRealtime();
+        if (remaining <= 0) {
+            throw new InterruptedIOException("Fetch budget exceeded");
+        }
+        return (int) Math.min(limit, remaining);
     }
 
     // returns URL object from a given string URL
@@ -60,130 +283,389 @@ public final class QueryUtils {
         return url;
     }
 
-    // Make an HTTP request to the given URL and return the response string
-    private static String makeHttpRequest(URL url) throws IOException {
+    // Make an HTTP request to the given URL and add the parsed earthquakes to the list
+    private static void makeHttpRequest(URL url, List<Earthquake> earthquakes,
+                                        EarthquakeParser.OnBatchParsedListener listener,
+                                        RequestCoalescer.Request request, long deadline) throws IOException {
 
-        // initialize raw JSON string to null
-        String jsonResponse = "";
-
-        // if the URL is null then return early
-        if (url == null) {
-            return jsonResponse;
+        // if the request was superseded before it started then return early
+        if (request != null && request.isCancelled()) {
+            return;
         }
 
         // initialize objects for connection and stream
         HttpURLConnection urlConnection = null;
+        ResumableInputStream resumableStream = null;
         InputStream inputStream = null;
 
+        // true once the response has been read to the end, the socket can then go back to the pool
+        boolean reusable = false;
+
         try {
 
             // open connection, set timeouts, set request method, connect
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000); // milliseconds
-            urlConnection.setConnectTimeout(15000); // milliseconds
-            urlConnection.setRequestMethod("GET");
+            urlConnection = openConnection(url, deadline);
+            long connectStart = LoadMetrics.start();
             urlConnection.connect();
+            LoadMetrics.stop(LoadMetrics.CONNECT, connectStart);
 
-            // check response code of HTTP request
+            // check response code of HTTP request, this waits for the response headers
             // 200 means success
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            long firstByteStart = LoadMetrics.start();
+            int responseCode = urlConnection.getResponseCode();
+            LoadMetrics.stop(LoadMetrics.FIRST_BYTE, firstByteStart);
+            if (responseCode == 200) {
+
+                // bytes on the wire and time blocked on the network, only measured while metrics are on
+                // a body interrupted by the network continues where it stopped instead of starting over
+                LoadMetrics.MeteredInputStream meteredStream = null;
+                resumableStream = new ResumableInputStream(url, urlConnection, deadline, request);
+                inputStream = resumableStream;
+                if (LoadMetrics.isEnabled()) {
+                    meteredStream = new LoadMetrics.MeteredInputStream(inputStream);
+                    inputStream = meteredStream;
+                }
+                long bodyStart = LoadMetrics.start();
+
+                // parse straight from the socket, no intermediate String of the whole payload
+                inputStream = decodeContent(inputStream, urlConnection.getContentEncoding());
+                inputStream = new CancellableInputStream(inputStream, request, deadline);
+                try {
+                    EarthquakeParser.parse(inputStream, earthquakes, listener);
+                } catch (MalformedJsonException e) {
+
+                    // log exception stack trace, keep whatever was parsed before the malformed token
+                    Log.e(LOG_TAG, "Problem parsing the earthquake JSON results.", e);
+                }
+
+                // the response cache only commits an entry once the body has been read to the end
+                // and the connection is only reused once nothing is left unread on the socket
+                drainStream(inputStream);
+                reusable = true;
+
+                // parsing streams with the download, split the body time into waiting and parsing
+                if (meteredStream != null && bodyStart != 0) {
+                    long bodyNanos = System.nanoTime() - bodyStart;
+                    LoadMetrics.record(LoadMetrics.DOWNLOAD, meteredStream.getReadNanos());
+                    LoadMetrics.record(LoadMetrics.PARSE, bodyNanos - meteredStream.getReadNanos());
+                    LoadMetrics.record(LoadMetrics.BYTES, meteredStream.getBytes());
+                    LoadMetrics.record(LoadMetrics.FEATURES, earthquakes.size());
+                }
             } else {
 
-                // log HTTP response code
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                // consume the error body as well so that the connection can be reused
+                inputStream = urlConnection.getErrorStream();
+                if (inputStream != null) {
+                    drainStream(inputStream);
+                }
+                reusable = true;
 
+                // report the HTTP response code to the caller
+                throw new ResponseCodeException(responseCode);
             }
 
-        // IOException is thrown by getInputStream() if something goes wrong parsing the characters
-        } catch (IOException e) {
-
-            // log exception stack trace
-            Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
-
-        // disconnect from url and close stream
+        // close stream, which returns a fully read keep-alive connection to the pool
+        // a connection in an unknown state is disconnected instead
+        // IOException is thrown by getInputStream() if something goes wrong, the caller decides how to handle it
         } finally {
-            if (urlConnection != null) {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+            if (urlConnection != null && !reusable) {
                 urlConnection.disconnect();
             }
+            if (resumableStream != null && !reusable) {
+                resumableStream.disconnect();
+            }
+        }
+    }
+
+    // query the USGS database for the details of a single event, returns null if they could not be fetched
+    // a single attempt, the detail view falls back to the row it was opened from
+    public static EarthquakeDetail fetchEarthquakeDetail(String eventId) {
+
+        // for example "https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=us1000h3p4&format=geojson"
+        Uri.Builder uriBuilder = Uri.parse(BuildConfig.USGS_REQUEST_URL).buildUpon();
+        uriBuilder.appendQueryParameter("eventid", eventId);
+        uriBuilder.appendQueryParameter("format", "geojson");
+        URL url = createUrl(uriBuilder.toString());
+        if (url == null) {
+            return null;
+        }
+
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        boolean reusable = false;
+        try {
+            urlConnection = openConnection(url, SystemClock.elapsedRealtime() + FETCH_BUDGET_MILLIS);
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode != 200) {
+                Log.e(LOG_TAG, "Error response code for event " + eventId + ": " + responseCode);
+                return null;
+            }
+
+            // read to the end, so the response is cached and the connection reused
+            inputStream = decodeContent(urlConnection.getInputStream(), urlConnection.getContentEncoding());
+            EarthquakeDetail detail = EarthquakeParser.parseDetail(inputStream);
+            drainStream(inputStream);
+            reusable = true;
+            return detail;
+
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem retrieving the details of event " + eventId, e);
+            return null;
+        } finally {
             if (inputStream != null) {
-                inputStream.close();
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing the event detail response.", e);
+                }
+            }
+            if (urlConnection != null && !reusable) {
+                urlConnection.disconnect();
             }
         }
+    }
+
+    // connection with the settings shared by every GeoJSON request, not yet connected
+    private static HttpURLConnection openConnection(URL url, long deadline) throws IOException {
+
+        // open connection, set timeouts, set request method
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setReadTimeout(timeout(READ_TIMEOUT_MILLIS, deadline));
+        urlConnection.setConnectTimeout(timeout(CONNECT_TIMEOUT_MILLIS, deadline));
+        urlConnection.setRequestMethod("GET");
+
+        // GeoJSON compresses about 10x, ask for it explicitly and decompress while parsing
+        urlConnection.setRequestProperty("Accept-Encoding", CONTENT_ENCODINGS);
 
-        // data type String
-        return jsonResponse;
+        // answer from the response cache when the stored entry is fresh enough,
+        // otherwise the cache sends a conditional GET and a 304 reuses the stored body
+        urlConnection.setUseCaches(true);
+        urlConnection.addRequestProperty("Cache-Control", "max-stale=" + HTTP_CACHE_MAX_STALE);
+        return urlConnection;
     }
 
-    // Convert the InputStream into a String which contains the entire raw JSON response
-    private static String readFromStream(InputStream inputStream) throws IOException {
+    // wrap the response body in a decompressing stream matching its Content-Encoding
+    private static InputStream decodeContent(InputStream inputStream, String contentEncoding) throws IOException {
 
-        // StringBuilder is mutable, a convenient way to construct Strings
-        StringBuilder output = new StringBuilder();
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+        if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new DeflateInputStream(inputStream);
+        }
 
-        // check that inputStream exists
-        if (inputStream != null) {
+        // identity, or an encoding the platform already decoded
+        return inputStream;
+    }
 
-            // define character set as UTF-8
-            // this is at the byte level where each byte defines a single character
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+    // deflate body with a BUFFER_SIZE buffer, InflaterInputStream only ends an Inflater it created
+    // itself and that constructor has no buffer size, so close() releases the native zlib memory here
+    private static final class DeflateInputStream extends InflaterInputStream {
+
+        DeflateInputStream(InputStream inputStream) {
+            super(inputStream, new Inflater(), BUFFER_SIZE);
+        }
 
-            // parsing a line of characters is much faster than one at a time
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
+        @Override
+        public void close() throws IOException {
 
-            // append lines to StringBuilder while there are still lines left to read
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+            try {
+                super.close();
+            } finally {
+                inf.end();
             }
         }
+    }
+
+    // read and discard whatever is left of the stream, for example trailing whitespace after the JSON
+    private static void drainStream(InputStream inputStream) throws IOException {
 
-        // convert mutable StringBuilder to immutable String
-        return output.toString();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (inputStream.read(buffer) != -1) {
+            // discard
+        }
     }
 
+    // response body that fails the next read once its request is cancelled or its budget is spent,
+    // which aborts the parse, the connection is then disconnected instead of being drained for reuse
+    private static final class CancellableInputStream extends FilterInputStream {
 
-    // Return a list of Earthquake objects built up from parsing a JSON response.
-    private static ArrayList<Earthquake> extractEarthquakesFromJSON(String jsonResponse) {
+        // may be null for a request that cannot be cancelled
+        private final RequestCoalescer.Request mRequest;
+        private final long mDeadline;
 
-        // initialize an empty ArrayList
-        ArrayList<Earthquake> earthquakes = new ArrayList<>();
+        CancellableInputStream(InputStream inputStream, RequestCoalescer.Request request, long deadline) {
+            super(inputStream);
+            mRequest = request;
+            mDeadline = deadline;
+        }
 
-        // Try to parse the raw jsonResponse String
-        try {
+        @Override
+        public int read() throws IOException {
+            checkCancelled();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            checkCancelled();
+            return super.read(buffer, offset, count);
+        }
+
+        private void checkCancelled() throws IOException {
+            if (mRequest != null && mRequest.isCancelled()) {
+                throw new InterruptedIOException("Request superseded");
+            }
+            if (SystemClock.elapsedRealtime() >= mDeadline) {
+                throw new InterruptedIOException("Fetch budget exceeded");
+            }
+        }
+    }
 
-            // go down two levels of JSON payload
-            JSONObject root = new JSONObject(jsonResponse);
-            JSONArray features = root.getJSONArray("features");
+    // raw response body that survives a dropped connection: after a failed read it asks for the rest
+    // of the same body with "Range: bytes=<position>-", and If-Range makes sure the server only sends
+    // the rest if the body has not changed, the reader above never notices the switch
+    // ranges address the encoded bytes, so compressed bodies resume just the same
+    private static final class ResumableInputStream extends InputStream {
+
+        private final URL mUrl;
+        private final long mDeadline;
+        private final RequestCoalescer.Request mRequest;
+
+        // ETag or Last-Modified of the first response, without one a resumed body could be a different version
+        private final String mValidator;
+        private final String mContentEncoding;
+
+        private HttpURLConnection mConnection;
+        private InputStream mInputStream;
+
+        // bytes of the body read so far, and resumes made
+        private long mPosition;
+        private int mResumes;
+
+        ResumableInputStream(URL url, HttpURLConnection connection, long deadline,
+                             RequestCoalescer.Request request) throws IOException {
+
+            mUrl = url;
+            mDeadline = deadline;
+            mRequest = request;
+            String etag = connection.getHeaderField("ETag");
+            mValidator = etag != null && !etag.startsWith("W/") ? etag : connection.getHeaderField("Last-Modified");
+            mContentEncoding = connection.getContentEncoding();
+            mConnection = connection;
+            mInputStream = connection.getInputStream();
+        }
 
-            // loop through all features (features = earthquake events)
-            for (int i = 0; i < features.length(); i++) {
+        @Override
+        public int read() throws IOException {
 
-                // properties Object contains the desired attributes
-                JSONObject currentFeature = features.getJSONObject(i);
-                JSONObject properties = currentFeature.getJSONObject("properties");
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
 
-                // get desired attributes from parsed JSON
-                double magnitude = (float) properties.getDouble("mag"); // cast double to float
-                String location = properties.getString("place");
-                long timeEpoch = properties.getLong("time");
-                String url = properties.getString("url");
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+
+            while (true) {
+                try {
+                    int read = mInputStream.read(buffer, offset, count);
+                    if (read > 0) {
+                        mPosition += read;
+                    }
+                    return read;
+                } catch (IOException e) {
+                    resume(e);
+                }
+            }
+        }
 
-                // add data to new Earthquake object and store in ArrayList
-                earthquakes.add(new Earthquake(magnitude, location, timeEpoch, url));
+        // replace the failed connection with one that continues at the current position, or rethrow
+        private void resume(IOException cause) throws IOException {
 
+            if (mValidator == null || mResumes >= MAX_RESUMES || (mRequest != null && mRequest.isCancelled())) {
+                throw cause;
+            }
+            mResumes++;
+            disconnect();
+
+            mConnection = (HttpURLConnection) mUrl.openConnection();
+            mConnection.setReadTimeout(timeout(READ_TIMEOUT_MILLIS, mDeadline));
+            mConnection.setConnectTimeout(timeout(CONNECT_TIMEOUT_MILLIS, mDeadline));
+            mConnection.setRequestProperty("Accept-Encoding", CONTENT_ENCODINGS);
+            mConnection.setRequestProperty("Range", "bytes=" + mPosition + "-");
+            mConnection.setRequestProperty("If-Range", mValidator);
+
+            // a partial body is never stored in or answered from the response cache
+            mConnection.setUseCaches(false);
+
+            // anything but the rest of the same bytes means the body changed or ranges are not supported
+            String contentRange = mConnection.getHeaderField("Content-Range");
+            if (mConnection.getResponseCode() != 206 || contentRange == null
+                    || !contentRange.startsWith("bytes " + mPosition + "-")
+                    || !equal(mContentEncoding, mConnection.getContentEncoding())) {
+                throw cause;
             }
+            mInputStream = mConnection.getInputStream();
+            Log.w(LOG_TAG, "Resumed the earthquake response at byte " + mPosition, cause);
+        }
 
-        } catch (JSONException e) {
+        @Override
+        public void close() throws IOException {
+            mInputStream.close();
+        }
 
-            // log exception stack trace
-            Log.e(LOG_TAG, "Problem parsing the earthquake JSON results.", e);
+        // drop the current connection without returning it to the pool
+        void disconnect() {
+            mConnection.disconnect();
         }
 
-        // return the list of earthquakes
-        return earthquakes;
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    // non-200 response, the code decides whether the request is worth retrying
+    private static final class ResponseCodeException extends IOException {
+
+        private final int mResponseCode;
+
+        ResponseCodeException(int responseCode) {
+            super("Error response code: " + responseCode);
+            mResponseCode = responseCode;
+        }
+
+        int getResponseCode() {
+            return mResponseCode;
+        }
+    }
+
+    // forwards only earthquakes whose id has not been forwarded before, so a retried response
+    // that is parsed from the start again does not publish its first events twice
+    private static final class UnseenListener implements EarthquakeParser.OnBatchParsedListener {
+
+        private final EarthquakeParser.OnBatchParsedListener mListener;
+        private final Set<String> mSeenIds = new HashSet<>();
+
+        UnseenListener(EarthquakeParser.OnBatchParsedListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void onBatchParsed(List<Earthquake> batch) {
+
+            List<Earthquake> unseen = new ArrayList<>(batch.size());
+            for (Earthquake earthquake : batch) {
+                if (earthquake.getId() == null || mSeenIds.add(earthquake.getId())) {
+                    unseen.add(earthquake);
+                }
+            }
+            if (!unseen.isEmpty()) {
+                mListener.onBatchParsed(unseen);
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,148 @@
+package com.example.android.quakereport;
+
+import android.os.SystemClock;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+// shared request layer in front of the network fetch
+// callers asking for the same key while a fetch is running wait for that fetch instead of starting another,
+// a key fetched within the last FRESH_MILLIS is not fetched again, and starting a new key in the same
+// group cancels the running fetch it supersedes, e.g. when minmag or orderby change mid-download
+public final class RequestCoalescer {
+
+    // a completed fetch stays valid for as long as the http cache serves it without revalidating
+    static final long FRESH_MILLIS = QueryUtils.HTTP_CACHE_MAX_STALE * 1000L;
+
+    // the network work of one request, run once however many callers join it
+    public interface Fetch {
+        void run(Request request);
+    }
+
+    // one running fetch, the fetch checks isCancelled() and stops early once it is superseded
+    public static final class Request {
+
+        private final String mKey;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private volatile boolean mCancelled;
+        private volatile boolean mFailed;
+
+        private Request(String key) {
+            mKey = key;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        // a failed fetch is not remembered as fresh, the next caller fetches again,
+        // and every caller that joined it is told it failed
+        public void setFailed() {
+            mFailed = true;
+        }
+    }
+
+    // all state is guarded by the class lock, fetches themselves run outside of it
+    private static final Map<String, Request> sInFlight = new HashMap<>();
+    private static final Map<String, Request> sLatestInGroup = new HashMap<>();
+
+    // in completion order, so stale entries are always at the head, see markCompleted()
+    private static final LinkedHashMap<String, Long> sCompletedAt = new LinkedHashMap<>();
+
+    // constructor is deliberately empty as no objects of this class will ever exist
+    private RequestCoalescer() {}
+
+    // run the fetch for this key unless it is fresh or already running, blocks until the data is in place
+    // returns false if the fetch failed, whether this caller ran it or joined it
+    // a fetch cancelled by a newer request of the group is not a failure, neither is an interrupted wait,
+    // the interrupted caller is being stopped itself
+    public static boolean execute(String key, String group, Fetch fetch) {
+
+        Request request;
+        Request superseded = null;
+        boolean owner = false;
+        synchronized (RequestCoalescer.class) {
+
+            // completed recently, the caller can read the stored result right away
+            Long completedAt = sCompletedAt.get(key);
+            if (completedAt != null && SystemClock.elapsedRealtime() - completedAt < FRESH_MILLIS) {
+                return true;
+            }
+
+            // already running, join it once the lock is released
+            request = sInFlight.get(key);
+            if (request == null) {
+
+                // a different query of the same group is now out of date
+                Request latest = sLatestInGroup.get(group);
+                if (latest != null && !latest.mKey.equals(key)) {
+                    superseded = latest;
+                }
+
+                request = new Request(key);
+                sInFlight.put(key, request);
+                sLatestInGroup.put(group, request);
+                owner = true;
+            }
+        }
+
+        if (!owner) {
+            return await(request);
+        }
+        if (superseded != null) {
+            superseded.mCancelled = true;
+        }
+
+        // this caller owns the request and does the work
+        try {
+            fetch.run(request);
+        } finally {
+            synchronized (RequestCoalescer.class) {
+                sInFlight.remove(key);
+                if (sLatestInGroup.get(group) == request) {
+                    sLatestInGroup.remove(group);
+                }
+                if (!request.mCancelled && !request.mFailed) {
+                    markCompleted(key, SystemClock.elapsedRealtime());
+                }
+            }
+            request.mDone.countDown();
+        }
+        return !request.mFailed;
+    }
+
+    // record the completion time of a key and drop the entries that are no longer fresh, every
+    // updatedafter, page and dashboard url is its own key, so they would otherwise pile up forever
+    // now is SystemClock.elapsedRealtime(), passed in so tests can move the clock
+    static synchronized void markCompleted(String key, long now) {
+
+        // removed first so the key moves to the tail, a LinkedHashMap keeps the first insertion position
+        sCompletedAt.remove(key);
+        sCompletedAt.put(key, now);
+
+        Iterator<Long> iterator = sCompletedAt.values().iterator();
+        while (iterator.hasNext() && now - iterator.next() >= FRESH_MILLIS) {
+            iterator.remove();
+        }
+    }
+
+    // forget the completion time of a key, the next execute() fetches it again
+    public static synchronized void invalidate(String key) {
+        sCompletedAt.remove(key);
+    }
+
+    // wait for a request started by another caller, returns false if it failed
+    private static boolean await(Request request) {
+
+        try {
+            request.mDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+        return !request.mFailed;
+    }
+
+}
@@ -34,14 +34,17 @@ public class SettingsActivity extends AppCompatActivity {
             // get preference key Strings
             String minMagnitudeKey = getString(R.string.settings_min_magnitude_key);
             String orderByKey = getString(R.string.settings_order_by_key);
+            String syncIntervalKey = getString(R.string.settings_sync_interval_key);
 
             // get the preference Objects associated with these keys
             Preference minMagnitude = findPreference(minMagnitudeKey);
             Preference orderBy = findPreference(orderByKey);
+            Preference syncInterval = findPreference(syncIntervalKey);
 
             // set listeners on these preferences
             bindPreferenceSummaryToValue(minMagnitude);
             bindPreferenceSummaryToValue(orderBy);
+            bindPreferenceSummaryToValue(syncInterval);
 
         }
 
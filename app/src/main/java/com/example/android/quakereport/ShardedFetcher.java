@@ -0,0 +1,281 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// fetch mode for queries that cover a wide starttime / endtime window, which includes every query without
+// one, USGS then answers with the last 30 days
+// the window is split into time shards that are fetched and parsed at the same time,
+// and the results are merged back in the order asked for by the orderby parameter
+// queries with a narrow window are passed straight to QueryUtils.fetchEarthquakeDataOrThrow()
+public final class ShardedFetcher {
+
+    // simple tag for log messages
+    private static final String LOG_TAG = ShardedFetcher.class.getSimpleName();
+
+    // windows shorter than two shards are not worth splitting
+    private static final long SHARD_DURATION = 7L * 24 * 60 * 60 * 1000; // one week in milliseconds
+
+    // shard boundaries are whole minutes, so the shard urls of a query, and their cached responses,
+    // stay the same for a minute
+    private static final long MINUTE_MILLIS = 60 * 1000;
+
+    // shards of a single query, and threads shared by every query
+    private static final int MAX_SHARDS = 12;
+    private static final int MAX_PARALLEL_SHARDS = 4;
+
+    // bounded pool shared by every loader, threads run at background priority
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_SHARDS,
+            new ThreadFactory() {
+
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "ShardedFetcher #" + mCount.incrementAndGet());
+                }
+            });
+
+    // constructor is deliberately empty as no objects of this class will ever exist
+    private ShardedFetcher() {}
+
+    // fetch the query, in parallel shards when it covers a wide time window
+    // the listener receives batches from several threads, calls are serialized so it needs no locking
+    // request may be null, cancelling it stops every shard
+    // a failed shard is thrown once the others have finished, their batches have reached the listener by then
+    public static List<Earthquake> fetch(String requestUrl, EarthquakeParser.OnBatchParsedListener listener,
+                                         final RequestCoalescer.Request request) throws IOException {
+
+        Uri uri = Uri.parse(requestUrl);
+        long[] boundaries = shardBoundaries(parseTime(uri.getQueryParameter("starttime")),
+                parseTime(uri.getQueryParameter("endtime")), System.currentTimeMillis());
+
+        // narrow windows are a single request
+        if (boundaries == null) {
+            return QueryUtils.fetchEarthquakeDataOrThrow(requestUrl, listener, request);
+        }
+
+        // serialize the listener, shards parse on different threads
+        final EarthquakeParser.OnBatchParsedListener serialListener = listener == null ? null
+                : new SerialListener(listener);
+
+        // one request per shard, boundaries are shared so the merge removes duplicates
+        List<Future<List<Earthquake>>> futures = new ArrayList<>();
+        for (int i = 0; i + 1 < boundaries.length; i++) {
+            final String shardUrl = replaceTimeWindow(uri, boundaries[i], boundaries[i + 1]);
+            futures.add(sExecutor.submit(new Callable<List<Earthquake>>() {
+                @Override
+                public List<Earthquake> call() throws IOException {
+                    return QueryUtils.fetchEarthquakeDataOrThrow(shardUrl, serialListener, request);
+                }
+            }));
+        }
+
+        // wait for every shard, a failed shard does not stop the others
+        List<List<Earthquake>> shards = new ArrayList<>();
+        IOException failure = null;
+        try {
+            for (Future<List<Earthquake>> future : futures) {
+                try {
+                    shards.add(future.get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Problem fetching a shard of the earthquake query.", e);
+                    failure = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+
+            // the loader was cancelled, stop the remaining shards, what they fetched is incomplete
+            for (Future<List<Earthquake>> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            failure = new InterruptedIOException("Sharded fetch interrupted");
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        return merge(shards, uri.getQueryParameter("orderby"), parseLimit(uri.getQueryParameter("limit")));
+    }
+
+    // the start of every shard followed by the end of the last one, or null if the window is not worth splitting
+    // times are Unix epoch milliseconds, 0 for a missing starttime or endtime
+    // without either the window is the USGS default, the last EarthquakeStore.QUERY_WINDOW_MILLIS,
+    // and without an endtime the last shard stays open ended, its end is 0, so USGS fills in the present
+    static long[] shardBoundaries(long startTime, long endTime, long now) {
+
+        boolean openEnded = endTime <= 0;
+        if (startTime <= 0 && openEnded) {
+            startTime = (now - EarthquakeStore.QUERY_WINDOW_MILLIS) / MINUTE_MILLIS * MINUTE_MILLIS;
+        }
+
+        // USGS starts a window with only an endtime 30 days before it, such queries are rare and not split
+        if (startTime <= 0) {
+            return null;
+        }
+
+        long windowEnd = openEnded ? now : endTime;
+        int shardCount = (int) Math.min(MAX_SHARDS, (windowEnd - startTime) / SHARD_DURATION);
+        if (shardCount < 2) {
+            return null;
+        }
+
+        long shardDuration = (windowEnd - startTime) / shardCount / MINUTE_MILLIS * MINUTE_MILLIS;
+        long[] boundaries = new long[shardCount + 1];
+        for (int i = 0; i < shardCount; i++) {
+            boundaries[i] = startTime + i * shardDuration;
+        }
+        boundaries[shardCount] = openEnded ? 0 : endTime;
+        return boundaries;
+    }
+
+    // combine the shards, drop duplicates by event id, sort and apply the limit to the merged list
+    // the top N of the union of each shard's top N is the top N of the whole window
+    private static List<Earthquake> merge(List<List<Earthquake>> shards, String orderBy, int limit) {
+
+        Map<String, Earthquake> byId = new LinkedHashMap<>();
+        List<Earthquake> merged = new ArrayList<>();
+        for (List<Earthquake> shard : shards) {
+            for (Earthquake earthquake : shard) {
+                if (earthquake.getId() == null) {
+                    merged.add(earthquake);
+                } else if (!byId.containsKey(earthquake.getId())) {
+                    byId.put(earthquake.getId(), earthquake);
+                }
+            }
+        }
+        merged.addAll(byId.values());
+
+        Collections.sort(merged, comparatorFor(orderBy));
+
+        if (limit > 0 && merged.size() > limit) {
+            return new ArrayList<>(merged.subList(0, limit));
+        }
+        return merged;
+    }
+
+    // comparator matching a USGS orderby value, "time", "time-asc", "magnitude" or "magnitude-asc",
+    // null for a query without one, which USGS orders by time
+    static Comparator<Earthquake> comparatorFor(String orderBy) {
+
+        final boolean ascending = orderBy != null && orderBy.endsWith("-asc");
+        final boolean byTime = orderBy == null || orderBy.startsWith("time");
+
+        return new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                int result = byTime
+                        ? compareLongs(a.getTime(), b.getTime())
+                        : Double.compare(a.getMagnitude(), b.getMagnitude());
+                return ascending ? result : -result;
+            }
+        };
+    }
+
+    // Long.compare() needs API 19
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    // copy of the query url with starttime and endtime replaced, an endTime of 0 leaves the window open ended
+    private static String replaceTimeWindow(Uri uri, long startTime, long endTime) {
+
+        Uri.Builder uriBuilder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (!name.equals("starttime") && !name.equals("endtime")) {
+                uriBuilder.appendQueryParameter(name, uri.getQueryParameter(name));
+            }
+        }
+        uriBuilder.appendQueryParameter("starttime", formatTime(startTime));
+        if (endTime > 0) {
+            uriBuilder.appendQueryParameter("endtime", formatTime(endTime));
+        }
+        return uriBuilder.toString();
+    }
+
+    // ISO8601 time in UTC, the format USGS expects
+    private static String formatTime(long time) {
+        return isoFormatter("yyyy-MM-dd'T'HH:mm:ss.SSS").format(new Date(time));
+    }
+
+    // parse the ISO8601 forms USGS accepts, returns 0 when the value is missing or not understood
+    static long parseTime(String value) {
+
+        if (value == null) {
+            return 0;
+        }
+        String[] patterns = { "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd" };
+        for (String pattern : patterns) {
+            try {
+                return isoFormatter(pattern).parse(value).getTime();
+            } catch (ParseException e) {
+                // try the next form
+            }
+        }
+        Log.e(LOG_TAG, "Problem parsing query time " + value);
+        return 0;
+    }
+
+    // strict UTC formatter, SimpleDateFormat is not thread safe so every call gets its own
+    private static SimpleDateFormat isoFormatter(String pattern) {
+
+        SimpleDateFormat formatter = new SimpleDateFormat(pattern, Locale.US);
+        formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        formatter.setLenient(false);
+        return formatter;
+    }
+
+    private static int parseLimit(String value) {
+
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // forwards batches to the wrapped listener one at a time
+    private static final class SerialListener implements EarthquakeParser.OnBatchParsedListener {
+
+        private final EarthquakeParser.OnBatchParsedListener mListener;
+
+        SerialListener(EarthquakeParser.OnBatchParsedListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public synchronized void onBatchParsed(List<Earthquake> batch) {
+            mListener.onBatchParsed(batch);
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.example.android.quakereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+// round trips and bounds checks of EarthquakeCodec, eager and lazy
+public class EarthquakeCodecTest {
+
+    // quantization steps of the codec, see EarthquakeCodec
+    private static final double MAGNITUDE_STEP = 0.01;
+    private static final double DEGREE_STEP = 0.00001;
+    private static final double DEPTH_STEP = 0.001;
+
+    private static List<Earthquake> sample() {
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        earthquakes.add(new Earthquake("us1000abcd", 6.2, "88km N of Yelizovo, Russia", 1476794096789L,
+                1476794196789L, "https://earthquake.usgs.gov/earthquakes/eventpage/us1000abcd",
+                53.9721, 158.4839, 35.5));
+        earthquakes.add(new Earthquake("ci37654321", 4.1, "10km SW of Ojai, CA", 1476790000000L,
+                1476790000000L, "https://example.org/event/ci37654321", 34.4028, -119.3067, 7.25));
+
+        // same location as the first, an earlier time and no coordinates
+        earthquakes.add(new Earthquake("ak0167", 2.8, "88km N of Yelizovo, Russia", 1476700000000L,
+                1476800000000L, "https://earthquake.usgs.gov/earthquakes/eventpage/ak0167",
+                Double.NaN, Double.NaN, Double.NaN));
+        return earthquakes;
+    }
+
+    @Test
+    public void roundTripOfObjects() throws IOException {
+
+        List<Earthquake> earthquakes = sample();
+        assertSameRows(earthquakes, EarthquakeCodec.decode(EarthquakeCodec.encode(earthquakes)));
+    }
+
+    @Test
+    public void roundTripOfColumns() throws IOException {
+
+        EarthquakeList columns = EarthquakeCodec.decode(EarthquakeCodec.encode(sample()));
+        assertSameRows(sample(), EarthquakeCodec.decode(EarthquakeCodec.encode(columns)));
+    }
+
+    @Test
+    public void lazyDecodeMatchesDecode() throws IOException {
+
+        byte[] encoded = EarthquakeCodec.encode(sample());
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        EarthquakeList lazy = EarthquakeCodec.decodeLazy(buffer);
+
+        assertSameRows(sample(), lazy);
+        assertEquals(encoded.length, buffer.position());
+    }
+
+    @Test
+    public void batchesFollowEachOther() throws IOException {
+
+        byte[] first = EarthquakeCodec.encode(sample());
+        byte[] second = EarthquakeCodec.encode(sample().subList(0, 1));
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length);
+        buffer.put(first).put(second).flip();
+
+        assertEquals(3, EarthquakeCodec.decode(buffer).size());
+        assertEquals(1, EarthquakeCodec.decodeLazy(buffer).size());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void emptyList() throws IOException {
+        assertEquals(0, EarthquakeCodec.decode(EarthquakeCodec.encode(new ArrayList<Earthquake>())).size());
+    }
+
+    @Test
+    public void missingFields() throws IOException {
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        earthquakes.add(new Earthquake(null, Double.NaN, "", 0, 0, "https://example.org", 0, 0, 0));
+        EarthquakeList decoded = EarthquakeCodec.decode(EarthquakeCodec.encode(earthquakes));
+
+        assertNull(decoded.getId(0));
+        assertTrue(Double.isNaN(decoded.getMagnitude(0)));
+        assertEquals("https://example.org", decoded.getUrl(0));
+    }
+
+    @Test
+    public void everyTruncationIsRejected() {
+
+        byte[] encoded = EarthquakeCodec.encode(sample());
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertRejected(truncated);
+        }
+    }
+
+    @Test
+    public void wrongHeaderIsRejected() {
+
+        byte[] encoded = EarthquakeCodec.encode(sample());
+        encoded[0] = 'X';
+        assertRejected(encoded);
+    }
+
+    @Test
+    public void unknownVersionIsRejected() {
+
+        // the version varint follows the 4 byte magic
+        byte[] encoded = EarthquakeCodec.encode(sample());
+        encoded[4] = 2;
+        assertRejected(encoded);
+    }
+
+    @Test
+    public void countBeyondTheBatchIsRejected() {
+
+        // the count varint follows the version, 100 records cannot fit the bytes that are left
+        byte[] encoded = EarthquakeCodec.encode(sample());
+        encoded[5] = 100;
+        assertRejected(encoded);
+    }
+
+    @Test
+    public void locationIndexOutOfRangeIsRejected() {
+
+        // one record pointing at location 0 of an empty dictionary, every other field null or 0
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putInt(0x51524b42);
+        buffer.put(new byte[] { 1, 1, 0 }); // version, count, locations
+        buffer.put(new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0 }); // id, magnitude, time, updated, location, url, ...
+        byte[] encoded = Arrays.copyOf(buffer.array(), buffer.position());
+        assertRejected(encoded);
+    }
+
+    private static void assertRejected(byte[] encoded) {
+
+        try {
+            EarthquakeCodec.decode(encoded);
+            fail("decode() accepted " + encoded.length + " bytes");
+        } catch (IOException expected) {
+            // the only exception a corrupt batch may throw
+        }
+        try {
+            EarthquakeCodec.decodeLazy(ByteBuffer.wrap(encoded));
+            fail("decodeLazy() accepted " + encoded.length + " bytes");
+        } catch (IOException expected) {
+            // the only exception a corrupt batch may throw
+        }
+    }
+
+    private static void assertSameRows(List<Earthquake> expected, EarthquakeList actual) {
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Earthquake earthquake = expected.get(i);
+            Earthquake decoded = actual.get(i);
+            assertEquals(earthquake.getId(), decoded.getId());
+            assertEquals(earthquake.getMagnitude(), decoded.getMagnitude(), MAGNITUDE_STEP);
+            assertEquals(earthquake.getLocation(), decoded.getLocation());
+            assertEquals(earthquake.getTime(), decoded.getTime());
+            assertEquals(earthquake.getUpdated(), decoded.getUpdated());
+            assertEquals(earthquake.getUrl(), decoded.getUrl());
+            assertEquals(earthquake.getLatitude(), decoded.getLatitude(), DEGREE_STEP);
+            assertEquals(earthquake.getLongitude(), decoded.getLongitude(), DEGREE_STEP);
+            assertEquals(earthquake.getDepth(), decoded.getDepth(), DEPTH_STEP);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.example.android.quakereport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+// the updates EarthquakeDiff records, replayed on a copy of the old list they must give the new one
+public class EarthquakeDiffTest {
+
+    private static Earthquake earthquake(String id, long updated) {
+        return new Earthquake(id, 4.5, id + " location", 1000, updated, "https://example.org/" + id, 0, 0, 0);
+    }
+
+    // one earthquake per character, all at the same revision
+    private static List<Earthquake> list(String ids) {
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (char id : ids.toCharArray()) {
+            earthquakes.add(earthquake(String.valueOf(id), 1000));
+        }
+        return earthquakes;
+    }
+
+    // the updates applied the way RecyclerView applies the notifications, rows of the new list
+    // are taken for inserted and changed positions
+    private static List<Earthquake> replay(EarthquakeDiff diff, List<Earthquake> oldList,
+                                           List<Earthquake> newList) {
+
+        List<Earthquake> rows = new ArrayList<>(oldList);
+        for (int[] operation : diff.getOperations()) {
+            switch (operation[0]) {
+                case EarthquakeDiff.INSERT:
+                    for (int i = 0; i < operation[2]; i++) {
+                        rows.add(operation[1] + i, newList.get(operation[1] + i));
+                    }
+                    break;
+                case EarthquakeDiff.REMOVE:
+                    for (int i = 0; i < operation[2]; i++) {
+                        rows.remove(operation[1]);
+                    }
+                    break;
+                case EarthquakeDiff.MOVE:
+                    rows.add(operation[2], rows.remove(operation[1]));
+                    break;
+                case EarthquakeDiff.CHANGE:
+                    for (int i = 0; i < operation[2]; i++) {
+                        rows.set(operation[1] + i, newList.get(operation[1] + i));
+                    }
+                    break;
+            }
+        }
+        return rows;
+    }
+
+    private static void assertTransforms(List<Earthquake> oldList, List<Earthquake> newList) {
+
+        EarthquakeDiff diff = EarthquakeDiff.calculate(oldList, newList);
+        List<Earthquake> rows = replay(diff, oldList, newList);
+        assertEquals(newList.size(), rows.size());
+        for (int i = 0; i < newList.size(); i++) {
+            assertEquals(newList.get(i).getId(), rows.get(i).getId());
+            assertEquals(newList.get(i).getUpdated(), rows.get(i).getUpdated());
+        }
+    }
+
+    @Test
+    public void identicalListsNeedNoUpdates() {
+        assertTrue(EarthquakeDiff.calculate(list("abcd"), list("abcd")).isEmpty());
+    }
+
+    @Test
+    public void newEventsAreOneInsert() {
+
+        EarthquakeDiff diff = EarthquakeDiff.calculate(list("cd"), list("abcd"));
+        assertEquals(1, diff.getOperations().size());
+        assertArrayEquals(new int[] { EarthquakeDiff.INSERT, 0, 2 }, diff.getOperations().get(0));
+    }
+
+    @Test
+    public void droppedEventsAreOneRemove() {
+
+        EarthquakeDiff diff = EarthquakeDiff.calculate(list("abcde"), list("ae"));
+        assertEquals(1, diff.getOperations().size());
+        assertArrayEquals(new int[] { EarthquakeDiff.REMOVE, 1, 3 }, diff.getOperations().get(0));
+    }
+
+    @Test
+    public void revisedEventIsOnlyRebound() {
+
+        List<Earthquake> revised = list("abc");
+        revised.set(1, earthquake("b", 2000));
+        EarthquakeDiff diff = EarthquakeDiff.calculate(list("abc"), revised);
+        assertEquals(1, diff.getOperations().size());
+        assertArrayEquals(new int[] { EarthquakeDiff.CHANGE, 1, 1 }, diff.getOperations().get(0));
+    }
+
+    @Test
+    public void mixedUpdates() {
+
+        assertTransforms(list("abcdef"), list("fxaecz"));
+        assertTransforms(list("abc"), list("cba"));
+        assertTransforms(list("abc"), list(""));
+        assertTransforms(list(""), list("abc"));
+
+        List<Earthquake> revised = list("dcba");
+        revised.set(0, earthquake("d", 2000));
+        assertTransforms(list("abcd"), revised);
+    }
+
+    @Test
+    public void duplicateIdsInTheOldList() {
+        assertTransforms(list("aab"), list("ab"));
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.example.android.quakereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// releasing, spilling to disk and restoring the pages of EarthquakePages
+public class EarthquakePagesTest {
+
+    private static final int PAGE_SIZE = 500;
+
+    // rows on screen and rows kept decoded around them, as in EarthquakePager
+    private static final int SCREEN_ROWS = 15;
+    private static final int KEEP_DISTANCE = 200;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static List<Earthquake> page(int start) {
+
+        List<Earthquake> rows = new ArrayList<>(PAGE_SIZE);
+        for (int i = start; i < start + PAGE_SIZE; i++) {
+            rows.add(new Earthquake("ev" + i, 2.5 + i % 50 / 10.0, i % 300 + "km N of Somewhere",
+                    1476794096789L - i * 60000L, 1476794096789L, null, i % 90, i % 180, 10));
+        }
+        return rows;
+    }
+
+    // pages of PAGE_SIZE rows, scrolled through to the end and released behind the screen
+    private EarthquakePages scrolledPages(int pageCount, File spillDirectory) {
+
+        EarthquakePages pages = new EarthquakePages(page(0), spillDirectory);
+        for (int i = 1; i < pageCount; i++) {
+            pages.addPage(page(i * PAGE_SIZE));
+            int firstVisible = i * PAGE_SIZE;
+            pages.release(firstVisible, firstVisible + SCREEN_ROWS, KEEP_DISTANCE);
+        }
+        return pages;
+    }
+
+    @Test
+    public void releasedRowsReadBack() throws Exception {
+
+        File directory = mFolder.newFolder();
+        EarthquakePages pages = scrolledPages(60, directory);
+        assertTrue(pages.hasReleasedPages());
+
+        // 30000 rows, well past what stays on the heap, read back from the heap and from the file
+        for (int position = 0; position < pages.size(); position += 499) {
+            assertEquals("ev" + position, pages.get(position).getId());
+        }
+
+        // the file is deleted as soon as it is created
+        assertEquals(0, directory.list().length);
+        pages.close();
+    }
+
+    @Test
+    public void withoutDirectoryEverythingStaysOnTheHeap() {
+
+        EarthquakePages pages = scrolledPages(60, null);
+        assertEquals("ev0", pages.get(0).getId());
+        assertEquals("ev29999", pages.get(29999).getId());
+    }
+
+    @Test
+    public void pagesAreRestoredFormatted() throws Exception {
+
+        EarthquakePages pages = scrolledPages(10, mFolder.newFolder());
+
+        // back at the top, only the first page is within reach
+        List<Integer> indexes = pages.findPagesToRestore(0, SCREEN_ROWS, KEEP_DISTANCE);
+        assertEquals(1, indexes.size());
+        assertEquals(0, (int) indexes.get(0));
+
+        EarthquakeList rows = pages.decodePage(0);
+        assertNotNull(rows);
+        EarthquakeDisplay display = new EarthquakeDisplay("2.5", 0, "", "", "", "");
+        for (int i = 0; i < rows.size(); i++) {
+            rows.setDisplay(i, display);
+        }
+        pages.restorePage(0, rows);
+
+        assertEquals(display, pages.get(3).getDisplay());
+        assertTrue(pages.findPagesToRestore(0, SCREEN_ROWS, KEEP_DISTANCE).isEmpty());
+
+        // restored already, there is nothing left to decode
+        assertNull(pages.decodePage(0));
+    }
+
+    @Test
+    public void rowReadBeforeTheRestoreWins() throws Exception {
+
+        EarthquakePages pages = scrolledPages(10, mFolder.newFolder());
+        EarthquakeList rows = pages.decodePage(0);
+        Earthquake read = pages.get(0);
+
+        // the rows decoded on the spot stay, so a bound row is not replaced under the adapter
+        pages.restorePage(0, rows);
+        assertEquals(read.getId(), pages.get(0).getId());
+        assertNull(pages.get(0).getDisplay());
+    }
+
+    @Test
+    public void closedPagesAreNotRestored() throws Exception {
+
+        EarthquakePages pages = scrolledPages(60, mFolder.newFolder());
+        pages.close();
+        assertNull(pages.decodePage(0));
+    }
+
+}
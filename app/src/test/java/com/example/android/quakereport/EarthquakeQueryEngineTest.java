@@ -0,0 +1,147 @@
+package com.example.android.quakereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+// which queries EarthquakeQueryEngine answers from the loaded list, and the rows and order it answers with
+public class EarthquakeQueryEngineTest {
+
+    // magnitudes go through a float like in EarthquakeParser, so M4.1 is stored as 4.0999999...
+    private static Earthquake earthquake(String id, double magnitude, long time, double latitude, double longitude) {
+        return new Earthquake(id, (float) magnitude, id + " location", time, time, null, latitude, longitude, 10);
+    }
+
+    // newest first, as loaded by the default query
+    private static List<Earthquake> loaded() {
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        earthquakes.add(earthquake("a", 6.0, 5000, 10, 10));
+        earthquakes.add(earthquake("f", 5.0, 4000, 20, 20));
+        earthquakes.add(earthquake("b", 4.1, 4000, -10, -10));
+        earthquakes.add(earthquake("c", 4.1, 3000, 10, 170));
+        earthquakes.add(earthquake("d", 2.0, 2000, 50, -120));
+        return earthquakes;
+    }
+
+    private static EarthquakeQueryEngine engine(EarthquakeQuery loadedQuery, List<Earthquake> earthquakes) {
+
+        EarthquakeQueryEngine engine = EarthquakeQueryEngine.getInstance();
+        engine.setData(loadedQuery, earthquakes);
+        return engine;
+    }
+
+    private static String ids(List<Earthquake> earthquakes) {
+
+        StringBuilder ids = new StringBuilder();
+        for (Earthquake earthquake : earthquakes) {
+            ids.append(earthquake.getId());
+        }
+        return ids.toString();
+    }
+
+    @Test
+    public void loadedQueryIsNotAnswered() {
+
+        EarthquakeQuery loadedQuery = new EarthquakeQuery(0, 0, 0, null, "time", 0);
+        EarthquakeQueryEngine engine = engine(loadedQuery, loaded());
+        assertNull(engine.query(new EarthquakeQuery(0, 0, 0, null, "time", 0)));
+    }
+
+    @Test
+    public void widerQueryIsNotAnswered() {
+
+        EarthquakeQueryEngine engine = engine(new EarthquakeQuery(2.0, 0, 0, null, "time", 0), loaded());
+        assertNull(engine.query(new EarthquakeQuery(1.0, 0, 0, null, "time", 0)));
+
+        // narrower in time, wider in magnitude
+        assertNull(engine.query(new EarthquakeQuery(0, 3000, 0, null, "time", 0)));
+    }
+
+    @Test
+    public void minMagnitudeKeepsEventsAtExactlyMinMagnitude() {
+
+        EarthquakeQueryEngine engine = engine(new EarthquakeQuery(0, 0, 0, null, "time", 0), loaded());
+        assertEquals("afbc", ids(engine.query(new EarthquakeQuery(4.1, 0, 0, null, "time", 0))));
+    }
+
+    @Test
+    public void tiesAreOrderedLikeTheStore() {
+
+        EarthquakeQueryEngine engine = engine(new EarthquakeQuery(0, 0, 0, null, "time", 0), loaded());
+
+        // equal magnitudes newest first in both directions, equal times largest first in both directions
+        assertEquals("afbcd", ids(engine.query(new EarthquakeQuery(0, 0, 0, null, "magnitude", 0))));
+        assertEquals("dbcfa", ids(engine.query(new EarthquakeQuery(0, 0, 0, null, "magnitude-asc", 0))));
+        assertEquals("afbcd", ids(engine.query(new EarthquakeQuery(0, 0, 0, null, "time", 5))));
+        assertEquals("dcfba", ids(engine.query(new EarthquakeQuery(0, 0, 0, null, "time-asc", 0))));
+    }
+
+    @Test
+    public void limitAndFilters() {
+
+        EarthquakeQueryEngine engine = engine(new EarthquakeQuery(0, 0, 0, null, "time", 0), loaded());
+        assertEquals("af", ids(engine.query(new EarthquakeQuery(0, 0, 0, null, "time", 2))));
+        assertEquals("fbc", ids(engine.query(new EarthquakeQuery(0, 3000, 4000, null, "time", 0))));
+        assertEquals("b", ids(engine.query(new EarthquakeQuery(0, 0, 0, "B LOC", "time", 0))));
+    }
+
+    @Test
+    public void regionFilter() {
+
+        EarthquakeQueryEngine engine = engine(new EarthquakeQuery(0, 0, 0, null, "time", 0), loaded());
+        assertEquals("af", ids(engine.query(new EarthquakeQuery(0, 0, 0, null, "time", 0, 0, 30, 0, 30))));
+
+        // a box crossing the antimeridian
+        assertEquals("c", ids(engine.query(new EarthquakeQuery(0, 0, 0, null, "time", 0, 0, 30, 160, 200))));
+    }
+
+    @Test
+    public void limitedListCoversItsOwnOrderOnly() {
+
+        // the newest three of a longer result, rows older than b may be missing
+        List<Earthquake> newest = loaded().subList(0, 3);
+        EarthquakeQueryEngine engine = engine(new EarthquakeQuery(0, 0, 0, null, "time", 3), newest);
+
+        // ahead of the last loaded row in the loaded order
+        assertEquals("a", ids(engine.query(new EarthquakeQuery(5.0, 0, 0, null, "time", 1))));
+
+        // another order needs the rows that were never loaded
+        assertNull(engine.query(new EarthquakeQuery(5.0, 0, 0, null, "magnitude", 2)));
+
+        // short of the limit, a missing older row could still match
+        assertNull(engine.query(new EarthquakeQuery(5.5, 0, 0, null, "time", 2)));
+
+        // unless the query's start time rules every older row out
+        assertEquals("a", ids(engine.query(new EarthquakeQuery(5.5, 4500, 0, null, "time", 2))));
+
+        // f is level with b, the last loaded row, a row that was never loaded could come before it
+        assertNull(engine.query(new EarthquakeQuery(5.0, 0, 0, null, "time", 2)));
+    }
+
+    @Test
+    public void invalidatedDataAnswersNothing() {
+
+        EarthquakeQueryEngine engine = engine(new EarthquakeQuery(0, 0, 0, null, "time", 0), loaded());
+        engine.invalidate();
+        assertNull(engine.query(new EarthquakeQuery(4.1, 0, 0, null, "time", 0)));
+    }
+
+    @Test
+    public void columnarListIsIndexedLikeObjects() {
+
+        EarthquakeList.Builder builder = new EarthquakeList.Builder(5);
+        for (Earthquake earthquake : loaded()) {
+            builder.add(earthquake);
+        }
+        EarthquakeQueryEngine engine = engine(new EarthquakeQuery(0, 0, 0, null, "time", 0), builder.build());
+        List<Earthquake> result = engine.query(new EarthquakeQuery(4.1, 0, 0, null, "magnitude", 0));
+        assertNotNull(result);
+        assertEquals("afbc", ids(result));
+    }
+
+}
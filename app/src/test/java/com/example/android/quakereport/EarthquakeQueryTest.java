@@ -0,0 +1,81 @@
+package com.example.android.quakereport;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+// equality and narrowing of EarthquakeQuery, which decide what EarthquakeQueryEngine may answer
+public class EarthquakeQueryTest {
+
+    private static final EarthquakeQuery DEFAULT = new EarthquakeQuery(4.0, 0, 0, null, "time", 20);
+
+    @Test
+    public void sameQuery() {
+
+        assertTrue(DEFAULT.isSameAs(new EarthquakeQuery(4.0, 0, 0, null, "time", 20)));
+        assertTrue(new EarthquakeQuery(0, 0, 0, "Alaska", "time", 0)
+                .isSameAs(new EarthquakeQuery(0, 0, 0, "ALASKA", "time", 0)));
+
+        // an empty text is no text filter
+        assertTrue(DEFAULT.isSameAs(new EarthquakeQuery(4.0, 0, 0, "", "time", 20)));
+    }
+
+    @Test
+    public void everyParameterMakesADifferentQuery() {
+
+        assertFalse(DEFAULT.isSameAs(new EarthquakeQuery(4.5, 0, 0, null, "time", 20)));
+        assertFalse(DEFAULT.isSameAs(new EarthquakeQuery(4.0, 1000, 0, null, "time", 20)));
+        assertFalse(DEFAULT.isSameAs(new EarthquakeQuery(4.0, 0, 1000, null, "time", 20)));
+        assertFalse(DEFAULT.isSameAs(new EarthquakeQuery(4.0, 0, 0, "Alaska", "time", 20)));
+        assertFalse(DEFAULT.isSameAs(new EarthquakeQuery(4.0, 0, 0, null, "time-asc", 20)));
+        assertFalse(DEFAULT.isSameAs(new EarthquakeQuery(4.0, 0, 0, null, "magnitude", 20)));
+        assertFalse(DEFAULT.isSameAs(new EarthquakeQuery(4.0, 0, 0, null, "time", 50)));
+        assertFalse(DEFAULT.isSameAs(new EarthquakeQuery(4.0, 0, 0, null, "time", 20, 30, 60, -180, 180)));
+    }
+
+    @Test
+    public void narrowerFilters() {
+
+        assertTrue(new EarthquakeQuery(5.0, 0, 0, null, "time", 20).isNarrowerThan(DEFAULT));
+        assertTrue(new EarthquakeQuery(4.0, 1000, 2000, null, "time", 20).isNarrowerThan(DEFAULT));
+        assertTrue(new EarthquakeQuery(4.0, 0, 0, "Alaska", "time", 20).isNarrowerThan(DEFAULT));
+        assertTrue(new EarthquakeQuery(4.0, 0, 0, null, "time", 20, 30, 60, -170, -140).isNarrowerThan(DEFAULT));
+
+        // order and limit do not change which earthquakes match
+        assertTrue(new EarthquakeQuery(4.0, 0, 0, null, "magnitude-asc", 5).isNarrowerThan(DEFAULT));
+        assertTrue(DEFAULT.isNarrowerThan(DEFAULT));
+    }
+
+    @Test
+    public void widerFilters() {
+
+        assertFalse(new EarthquakeQuery(3.0, 0, 0, null, "time", 20).isNarrowerThan(DEFAULT));
+
+        // an open end is wider than any bound
+        EarthquakeQuery window = new EarthquakeQuery(4.0, 1000, 2000, null, "time", 20);
+        assertFalse(new EarthquakeQuery(4.0, 0, 2000, null, "time", 20).isNarrowerThan(window));
+        assertFalse(new EarthquakeQuery(4.0, 1000, 0, null, "time", 20).isNarrowerThan(window));
+        assertFalse(new EarthquakeQuery(4.0, 500, 2000, null, "time", 20).isNarrowerThan(window));
+
+        // a text filter only narrows a query whose text it contains
+        EarthquakeQuery alaska = new EarthquakeQuery(4.0, 0, 0, "alaska", "time", 20);
+        assertTrue(new EarthquakeQuery(4.0, 0, 0, "Central Alaska", "time", 20).isNarrowerThan(alaska));
+        assertFalse(new EarthquakeQuery(4.0, 0, 0, "Hawaii", "time", 20).isNarrowerThan(alaska));
+        assertFalse(DEFAULT.isNarrowerThan(alaska));
+
+        // a box only narrows a box that contains it
+        EarthquakeQuery box = new EarthquakeQuery(4.0, 0, 0, null, "time", 20, 30, 60, -170, -140);
+        assertFalse(DEFAULT.isNarrowerThan(box));
+        assertFalse(new EarthquakeQuery(4.0, 0, 0, null, "time", 20, 20, 60, -170, -140).isNarrowerThan(box));
+    }
+
+    @Test
+    public void region() {
+
+        assertFalse(DEFAULT.hasRegion());
+        assertTrue(new EarthquakeQuery(4.0, 0, 0, null, "time", 20, -90, 90, 160, 200).hasRegion());
+        assertFalse(new EarthquakeQuery(4.0, 0, 0, null, "time", 20, -90, 90, 0, 360).hasRegion());
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.example.android.quakereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+// sharing, superseding and freshness of RequestCoalescer
+// the coalescer is static, so every test uses keys and groups of its own
+// SystemClock.elapsedRealtime() returns 0 in JVM tests, so every completion is fresh unless a test moves the clock
+public class RequestCoalescerTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    // a fetch that counts its runs and blocks until released, failing if asked to
+    private static final class BlockingFetch implements RequestCoalescer.Fetch {
+
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final AtomicInteger mRuns = new AtomicInteger();
+        final boolean mFail;
+        volatile RequestCoalescer.Request mRequest;
+
+        BlockingFetch(boolean fail) {
+            mFail = fail;
+        }
+
+        @Override
+        public void run(RequestCoalescer.Request request) {
+
+            mRuns.incrementAndGet();
+            mRequest = request;
+            mStarted.countDown();
+            try {
+                mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (mFail) {
+                request.setFailed();
+            }
+        }
+    }
+
+    // a fetch that returns right away
+    private static final class CountingFetch implements RequestCoalescer.Fetch {
+
+        final AtomicInteger mRuns = new AtomicInteger();
+
+        @Override
+        public void run(RequestCoalescer.Request request) {
+            mRuns.incrementAndGet();
+        }
+    }
+
+    // execute() on a thread of its own, the result is read after join()
+    private static final class Caller extends Thread {
+
+        private final String mKey;
+        private final String mGroup;
+        private final RequestCoalescer.Fetch mFetch;
+        volatile boolean mResult;
+
+        Caller(String key, String group, RequestCoalescer.Fetch fetch) {
+            mKey = key;
+            mGroup = group;
+            mFetch = fetch;
+            start();
+        }
+
+        @Override
+        public void run() {
+            mResult = RequestCoalescer.execute(mKey, mGroup, mFetch);
+        }
+    }
+
+    // waits until a caller blocks on the running request, it cannot be observed directly
+    private static void awaitJoined(Caller caller) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_SECONDS * 1000;
+        while (caller.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void callersOfARunningKeyShareItsFetch() throws InterruptedException {
+
+        BlockingFetch fetch = new BlockingFetch(false);
+        Caller owner = new Caller("join", "join-group", fetch);
+        assertTrue(fetch.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        CountingFetch second = new CountingFetch();
+        Caller joiner = new Caller("join", "join-group", second);
+        awaitJoined(joiner);
+        fetch.mRelease.countDown();
+        owner.join();
+        joiner.join();
+
+        assertEquals(1, fetch.mRuns.get());
+        assertEquals(0, second.mRuns.get());
+        assertTrue(owner.mResult);
+        assertTrue(joiner.mResult);
+    }
+
+    @Test
+    public void failureReachesCallersThatJoined() throws InterruptedException {
+
+        BlockingFetch fetch = new BlockingFetch(true);
+        Caller owner = new Caller("fail", "fail-group", fetch);
+        assertTrue(fetch.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        Caller joiner = new Caller("fail", "fail-group", new CountingFetch());
+        awaitJoined(joiner);
+        fetch.mRelease.countDown();
+        owner.join();
+        joiner.join();
+
+        assertFalse(owner.mResult);
+        assertFalse(joiner.mResult);
+    }
+
+    @Test
+    public void failedKeyIsFetchedAgain() throws InterruptedException {
+
+        BlockingFetch failing = new BlockingFetch(true);
+        failing.mRelease.countDown();
+        assertFalse(RequestCoalescer.execute("retry", "retry-group", failing));
+
+        CountingFetch fetch = new CountingFetch();
+        assertTrue(RequestCoalescer.execute("retry", "retry-group", fetch));
+        assertEquals(1, fetch.mRuns.get());
+    }
+
+    @Test
+    public void newerKeyOfTheGroupSupersedesTheRunningOne() throws InterruptedException {
+
+        BlockingFetch older = new BlockingFetch(false);
+        Caller owner = new Caller("minmag=4", "supersede-group", older);
+        assertTrue(older.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        CountingFetch newer = new CountingFetch();
+        assertTrue(RequestCoalescer.execute("minmag=5", "supersede-group", newer));
+        assertTrue(older.mRequest.isCancelled());
+        assertEquals(1, newer.mRuns.get());
+
+        // a cancelled fetch is not a failure, but it is not fresh either
+        older.mRelease.countDown();
+        owner.join();
+        assertTrue(owner.mResult);
+        CountingFetch again = new CountingFetch();
+        RequestCoalescer.execute("minmag=4", "supersede-group", again);
+        assertEquals(1, again.mRuns.get());
+    }
+
+    @Test
+    public void otherGroupsAreNotSuperseded() throws InterruptedException {
+
+        BlockingFetch running = new BlockingFetch(false);
+        Caller owner = new Caller("region=a", "group-a", running);
+        assertTrue(running.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        RequestCoalescer.execute("region=b", "group-b", new CountingFetch());
+        assertFalse(running.mRequest.isCancelled());
+        running.mRelease.countDown();
+        owner.join();
+    }
+
+    @Test
+    public void completedKeyIsFreshUntilInvalidated() {
+
+        CountingFetch fetch = new CountingFetch();
+        assertTrue(RequestCoalescer.execute("fresh", "fresh-group", fetch));
+        assertTrue(RequestCoalescer.execute("fresh", "fresh-group", fetch));
+        assertEquals(1, fetch.mRuns.get());
+
+        RequestCoalescer.invalidate("fresh");
+        assertTrue(RequestCoalescer.execute("fresh", "fresh-group", fetch));
+        assertEquals(2, fetch.mRuns.get());
+    }
+
+    @Test
+    public void staleCompletionsArePruned() {
+
+        // completed at 0, then another key FRESH_MILLIS later drops it, the clock of execute() stays at 0
+        RequestCoalescer.markCompleted("stale", 0);
+        RequestCoalescer.markCompleted("later", RequestCoalescer.FRESH_MILLIS);
+
+        CountingFetch fetch = new CountingFetch();
+        RequestCoalescer.execute("stale", "stale-group", fetch);
+        assertEquals(1, fetch.mRuns.get());
+
+        CountingFetch later = new CountingFetch();
+        RequestCoalescer.execute("later", "later-group", later);
+        assertEquals(0, later.mRuns.get());
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.example.android.quakereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+// shard windows, orderby comparators and query times of ShardedFetcher
+public class ShardedFetcherTest {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    // 2016-10-18T12:34:56.789Z, not on a minute boundary
+    private static final long NOW = 1476794096789L;
+
+    @Test
+    public void defaultWindowIsSharded() {
+
+        long[] boundaries = ShardedFetcher.shardBoundaries(0, 0, NOW);
+
+        // 30 days in one week shards
+        assertNotNull(boundaries);
+        assertEquals(5, boundaries.length);
+
+        // whole minutes, starting at most a minute before the USGS default window, and open ended
+        long start = boundaries[0];
+        assertEquals(0, start % MINUTE);
+        assertTrue(start <= NOW - EarthquakeStore.QUERY_WINDOW_MILLIS);
+        assertTrue(start > NOW - EarthquakeStore.QUERY_WINDOW_MILLIS - MINUTE);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(0, boundaries[i] % MINUTE);
+            assertTrue(boundaries[i] > boundaries[i - 1]);
+        }
+        assertEquals(0, boundaries[4]);
+    }
+
+    @Test
+    public void defaultWindowIsStableWithinAMinute() {
+
+        long minute = NOW / MINUTE * MINUTE;
+        long[] first = ShardedFetcher.shardBoundaries(0, 0, minute);
+        long[] last = ShardedFetcher.shardBoundaries(0, 0, minute + MINUTE - 1);
+        for (int i = 0; i < first.length; i++) {
+            assertEquals(first[i], last[i]);
+        }
+    }
+
+    @Test
+    public void explicitWindowKeepsItsEnd() {
+
+        long start = NOW - 60 * DAY;
+        long[] boundaries = ShardedFetcher.shardBoundaries(start, NOW, NOW + DAY);
+
+        assertNotNull(boundaries);
+        assertEquals(9, boundaries.length);
+        assertEquals(start, boundaries[0]);
+        assertEquals(NOW, boundaries[8]);
+    }
+
+    @Test
+    public void shardCountIsCapped() {
+
+        long[] boundaries = ShardedFetcher.shardBoundaries(NOW - 365 * DAY, NOW, NOW);
+        assertEquals(13, boundaries.length);
+    }
+
+    @Test
+    public void narrowWindowsAreNotSharded() {
+
+        assertNull(ShardedFetcher.shardBoundaries(NOW - 10 * DAY, NOW, NOW));
+        assertNull(ShardedFetcher.shardBoundaries(NOW - 10 * DAY, 0, NOW));
+
+        // only an endtime
+        assertNull(ShardedFetcher.shardBoundaries(0, NOW, NOW));
+    }
+
+    @Test
+    public void parseTimeAcceptsUsgsForms() {
+
+        assertEquals(1476794096789L, ShardedFetcher.parseTime("2016-10-18T12:34:56.789"));
+        assertEquals(1476794096000L, ShardedFetcher.parseTime("2016-10-18T12:34:56"));
+        assertEquals(1476748800000L, ShardedFetcher.parseTime("2016-10-18"));
+        assertEquals(0, ShardedFetcher.parseTime(null));
+    }
+
+    @Test
+    public void comparatorsFollowOrderBy() {
+
+        Earthquake older = new Earthquake("a", 5.0, "", 1000, 0, "", 0, 0, 0);
+        Earthquake newer = new Earthquake("b", 3.0, "", 2000, 0, "", 0, 0, 0);
+        List<Earthquake> earthquakes = new ArrayList<>();
+        earthquakes.add(older);
+        earthquakes.add(newer);
+
+        Collections.sort(earthquakes, ShardedFetcher.comparatorFor("time"));
+        assertEquals(newer, earthquakes.get(0));
+        Collections.sort(earthquakes, ShardedFetcher.comparatorFor("time-asc"));
+        assertEquals(older, earthquakes.get(0));
+        Collections.sort(earthquakes, ShardedFetcher.comparatorFor("magnitude-asc"));
+        assertEquals(newer, earthquakes.get(0));
+
+        Collections.sort(earthquakes, ShardedFetcher.comparatorFor("magnitude"));
+        assertEquals(older, earthquakes.get(0));
+
+        // USGS orders by time, newest first, when orderby is missing
+        Collections.sort(earthquakes, ShardedFetcher.comparatorFor(null));
+        assertEquals(newer, earthquakes.get(0));
+    }
+
+}
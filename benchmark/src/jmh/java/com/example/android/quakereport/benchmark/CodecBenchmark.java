@@ -0,0 +1,76 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeCodec;
+import com.example.android.quakereport.EarthquakeList;
+import com.example.android.quakereport.EarthquakeParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// encoding and decoding a batch with EarthquakeCodec, compare decode() with ParseBenchmark.parseToColumns()
+// for the cost of reading the same list back from GeoJSON
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    // rows visible on a phone screen
+    private static final int SCREEN_ROWS = 15;
+
+    // number of earthquakes in the batch
+    @Param({"20", "2000", "20000"})
+    public int features;
+
+    // the parsed fixture in columnar storage, and its encoding
+    private EarthquakeList mEarthquakes;
+    private byte[] mEncoded;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        byte[] response = Fixtures.geoJson(features).getBytes(Charset.forName("UTF-8"));
+        List<Earthquake> parsed = new ArrayList<>();
+        EarthquakeParser.parse(new ByteArrayInputStream(response), parsed, null);
+        EarthquakeList.Builder builder = new EarthquakeList.Builder(parsed.size());
+        for (Earthquake earthquake : parsed) {
+            builder.add(earthquake);
+        }
+        mEarthquakes = builder.build();
+        mEncoded = EarthquakeCodec.encode(mEarthquakes);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return EarthquakeCodec.encode(mEarthquakes);
+    }
+
+    @Benchmark
+    public EarthquakeList decode() throws IOException {
+        return EarthquakeCodec.decode(mEncoded);
+    }
+
+    // lazy record mode followed by reading the rows of one screen, as EarthquakeActivity does with the snapshot
+    @Benchmark
+    public EarthquakeList decodeLazyFirstScreen() throws IOException {
+
+        EarthquakeList earthquakes = EarthquakeCodec.decodeLazy(ByteBuffer.wrap(mEncoded));
+        for (int i = 0; i < Math.min(SCREEN_ROWS, earthquakes.size()); i++) {
+            earthquakes.get(i);
+        }
+        return earthquakes;
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeDisplay;
+import com.example.android.quakereport.EarthquakeFormatter;
+import com.example.android.quakereport.EarthquakeParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// time and allocation of the per-row formatting helpers that run while a list is bound
+// each invocation formats the next earthquake of a 2,000 feature fixture
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatBenchmark {
+
+    // colors are plain ints on a JVM, their values do not matter here
+    private static final int[] MAGNITUDE_COLORS = { 1, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+
+    private EarthquakeFormatter mFormatter;
+    private Earthquake[] mEarthquakes;
+    private Date mDate;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        mFormatter = new EarthquakeFormatter(MAGNITUDE_COLORS, "Near the");
+        mDate = new Date();
+
+        byte[] response = Fixtures.geoJson(2000).getBytes(Charset.forName("UTF-8"));
+        List<Earthquake> earthquakes = new ArrayList<>();
+        EarthquakeParser.parse(new ByteArrayInputStream(response), earthquakes, null);
+        mEarthquakes = earthquakes.toArray(new Earthquake[earthquakes.size()]);
+    }
+
+    // next earthquake of the fixture, so results are not constant folded
+    private Earthquake next() {
+        Earthquake earthquake = mEarthquakes[mNext];
+        mNext = (mNext + 1) % mEarthquakes.length;
+        return earthquake;
+    }
+
+    @Benchmark
+    public String formatDate() {
+        mDate.setTime(next().getTime());
+        return mFormatter.formatDate(mDate);
+    }
+
+    @Benchmark
+    public String formatTime() {
+        mDate.setTime(next().getTime());
+        return mFormatter.formatTime(mDate);
+    }
+
+    @Benchmark
+    public String formatMagnitude() {
+        return mFormatter.formatMagnitude(next().getMagnitude());
+    }
+
+    // location offset / primary split on " of "
+    @Benchmark
+    public String[] splitLocation() {
+        return mFormatter.splitLocation(next().getLocation());
+    }
+
+    // a whole row: all of the above plus the magnitude color
+    @Benchmark
+    public EarthquakeDisplay formatRow() {
+        return mFormatter.format(next());
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeList;
+import com.example.android.quakereport.EarthquakeParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// time and allocation of parsing a whole USGS response, as done by QueryUtils.fetchEarthquakeData()
+// the response is read from memory so only the parser is measured
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+
+    // number of features in the response
+    @Param({"20", "2000", "20000"})
+    public int features;
+
+    // UTF-8 encoded response body
+    private byte[] mResponse;
+
+    @Setup
+    public void setUp() {
+        mResponse = Fixtures.geoJson(features).getBytes(Charset.forName("UTF-8"));
+    }
+
+    // default mode, a single list returned at the end
+    @Benchmark
+    public List<Earthquake> parse() throws IOException {
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        EarthquakeParser.parse(new ByteArrayInputStream(mResponse), earthquakes, null);
+        return earthquakes;
+    }
+
+    // progressive mode, includes the cost of collecting every batch for the listener
+    @Benchmark
+    public List<Earthquake> parseInBatches() throws IOException {
+
+        final List<List<Earthquake>> batches = new ArrayList<>();
+        List<Earthquake> earthquakes = new ArrayList<>();
+        EarthquakeParser.parse(new ByteArrayInputStream(mResponse), earthquakes,
+                new EarthquakeParser.OnBatchParsedListener() {
+                    @Override
+                    public void onBatchParsed(List<Earthquake> batch) {
+                        batches.add(batch);
+                    }
+                });
+        return earthquakes;
+    }
+
+    // parse straight into the columnar storage, as QueryUtils.fetchEarthquakeData() does
+    @Benchmark
+    public EarthquakeList parseToColumns() throws IOException {
+
+        EarthquakeList earthquakes = new EarthquakeList();
+        EarthquakeParser.parse(new ByteArrayInputStream(mResponse), earthquakes, null);
+        return earthquakes;
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeGrid;
+import com.example.android.quakereport.EarthquakeList;
+import com.example.android.quakereport.EarthquakeParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// building the spatial index over a loaded catalogue and querying it, as for a map viewport
+// or "quakes within 300 km of me"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialBenchmark {
+
+    // number of loaded earthquakes
+    @Param({"2000", "50000"})
+    public int features;
+
+    // the catalogue in the columnar storage the store returns for large results
+    private EarthquakeList mEarthquakes;
+    private EarthquakeGrid mGrid;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        byte[] response = Fixtures.geoJson(features).getBytes(Charset.forName("UTF-8"));
+        List<Earthquake> earthquakes = new ArrayList<>();
+        EarthquakeParser.parse(new ByteArrayInputStream(response), earthquakes, null);
+
+        EarthquakeList.Builder builder = new EarthquakeList.Builder(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            builder.add(earthquake);
+        }
+        mEarthquakes = builder.build();
+        mGrid = new EarthquakeGrid(mEarthquakes);
+    }
+
+    @Benchmark
+    public EarthquakeGrid build() {
+        return new EarthquakeGrid(mEarthquakes);
+    }
+
+    // a 10 by 10 degree viewport, around Japan
+    @Benchmark
+    public List<Earthquake> boundingBox() {
+        return mGrid.queryBoundingBox(30, 135, 40, 145);
+    }
+
+    // a viewport across the antimeridian, around Fiji
+    @Benchmark
+    public List<Earthquake> boundingBoxAcrossAntimeridian() {
+        return mGrid.queryBoundingBox(-25, 175, -10, -175);
+    }
+
+    // the 20 nearest events within 300 km of Los Angeles
+    @Benchmark
+    public List<Earthquake> nearestWithin300Km() {
+        return mGrid.nearest(34.05, -118.25, 20, 300);
+    }
+
+}
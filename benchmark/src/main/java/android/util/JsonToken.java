@@ -0,0 +1,15 @@
+package android.util;
+
+// desktop JVM stand-in for the platform android.util.JsonToken, used only by the benchmarks
+public enum JsonToken {
+    BEGIN_ARRAY,
+    END_ARRAY,
+    BEGIN_OBJECT,
+    END_OBJECT,
+    NAME,
+    STRING,
+    NUMBER,
+    BOOLEAN,
+    NULL,
+    END_DOCUMENT
+}
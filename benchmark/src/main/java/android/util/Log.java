@@ -0,0 +1,14 @@
+package android.util;
+
+// desktop JVM stand-in for the platform android.util.Log, used only by the benchmarks
+// messages go to stderr so they never mix with the benchmark results
+public final class Log {
+
+    private Log() {}
+
+    public static int w(String tag, String msg) {
+        System.err.println("W/" + tag + ": " + msg);
+        return 0;
+    }
+
+}
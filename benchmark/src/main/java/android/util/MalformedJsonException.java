@@ -0,0 +1,14 @@
+package android.util;
+
+import java.io.IOException;
+
+// desktop JVM stand-in for the platform android.util.MalformedJsonException, used only by the benchmarks
+public final class MalformedJsonException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MalformedJsonException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.example.android.quakereport.benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+
+// synthetic responses in the exact layout of the USGS GeoJSON feed
+// every property USGS sends is present so that the parser also pays for skipping unused fields
+// a fixed seed keeps the fixtures identical between runs
+// used by the JMH benchmarks and served by MockUsgsServer
+public final class Fixtures {
+
+    // a few real looking location strings, including some without the " of " offset
+    private static final String[] PLACES = {
+            "88km N of Yelizovo, Russia",
+            "10km SSW of Idyllwild, CA",
+            "Off the east coast of Honshu, Japan",
+            "South of the Fiji Islands",
+            "35km ESE of Ndoi Island, Fiji",
+            "4km WNW of The Geysers, CA",
+            "Central Mid-Atlantic Ridge",
+            "120km SW of Tual, Indonesia" };
+
+    private static final String[] NETWORKS = { "us", "ci", "nc", "ak", "hv" };
+
+    // 2018-10-01T00:00:00Z, fixtures count backwards from here
+    private static final long START_TIME = 1538352000000L;
+
+    // constructor is deliberately empty as no objects of this class will ever exist
+    private Fixtures() {}
+
+    // GeoJSON FeatureCollection with the given number of features
+    public static String geoJson(int features) {
+
+        Random random = new Random(features);
+        StringBuilder json = new StringBuilder(features * 1100);
+
+        json.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":").append(START_TIME)
+                .append(",\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson\"")
+                .append(",\"title\":\"USGS Earthquakes\",\"status\":200,\"api\":\"1.5.8\",\"count\":")
+                .append(features).append("},\"features\":[");
+
+        for (int i = 0; i < features; i++) {
+
+            String network = NETWORKS[random.nextInt(NETWORKS.length)];
+            String id = network + String.format(Locale.US, "%08d", 10000000 + i);
+            double magnitude = Math.round(random.nextDouble() * 80) / 10.0;
+            String place = PLACES[random.nextInt(PLACES.length)];
+            long time = START_TIME - i * 60000L - random.nextInt(60000);
+            long updated = time + random.nextInt(86400000);
+
+            if (i > 0) {
+                json.append(',');
+            }
+            appendFeature(json, random, network, id, magnitude, place, time, updated);
+        }
+
+        json.append("],\"bbox\":[-180,-90,0,180,90,700]}");
+        return json.toString();
+    }
+
+    // a single feature with a new id, as pushed by the live stream of MockUsgsServer
+    public static String feature(Random random, String id, long time) {
+
+        String network = id.substring(0, 2);
+        double magnitude = Math.round(random.nextDouble() * 80) / 10.0;
+        String place = PLACES[random.nextInt(PLACES.length)];
+        StringBuilder json = new StringBuilder(1100);
+        appendFeature(json, random, network, id, magnitude, place, time, time);
+        return json.toString();
+    }
+
+    // one feature object with every property USGS sends, the remaining values are drawn from random
+    private static void appendFeature(StringBuilder json, Random random, String network, String id,
+                                      double magnitude, String place, long time, long updated) {
+
+        json.append("{\"type\":\"Feature\",\"properties\":{")
+                .append("\"mag\":").append(magnitude)
+                .append(",\"place\":\"").append(place).append('"')
+                .append(",\"time\":").append(time)
+                .append(",\"updated\":").append(updated)
+                .append(",\"tz\":-480")
+                .append(",\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/").append(id).append('"')
+                .append(",\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=").append(id)
+                .append("&format=geojson\"")
+                .append(",\"felt\":null,\"cdi\":null,\"mmi\":null,\"alert\":null")
+                .append(",\"status\":\"reviewed\",\"tsunami\":0")
+                .append(",\"sig\":").append(random.nextInt(1000))
+                .append(",\"net\":\"").append(network).append('"')
+                .append(",\"code\":\"").append(id.substring(2)).append('"')
+                .append(",\"ids\":\",").append(id).append(",\"")
+                .append(",\"sources\":\",").append(network).append(",\"")
+                .append(",\"types\":\",geoserve,origin,phase-data,\"")
+                .append(",\"nst\":").append(random.nextInt(200))
+                .append(",\"dmin\":").append(random.nextDouble())
+                .append(",\"rms\":").append(random.nextDouble())
+                .append(",\"gap\":").append(random.nextInt(360))
+                .append(",\"magType\":\"mb\",\"type\":\"earthquake\"")
+                .append(",\"title\":\"M ").append(magnitude).append(" - ").append(place).append('"')
+                .append("},\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                .append(random.nextDouble() * 360 - 180).append(',')
+                .append(random.nextDouble() * 180 - 90).append(',')
+                .append(random.nextDouble() * 100)
+                .append("]},\"id\":\"").append(id).append("\"}");
+    }
+
+}
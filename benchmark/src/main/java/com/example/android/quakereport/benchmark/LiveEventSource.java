@@ -0,0 +1,145 @@
+package com.example.android.quakereport.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// server-sent events stand-in for the live mode of the app, served by MockUsgsServer at LIVE_PATH
+// a generator thread makes up insert, update and delete events at a fixed rate, every client gets each
+// event once, and a client reconnecting with Last-Event-ID first gets the events it missed
+public final class LiveEventSource implements HttpHandler {
+
+    public static final String LIVE_PATH = "/live";
+
+    // events kept for replay, older ones are forgotten
+    private static final int HISTORY = 1000;
+
+    // a comment line is sent after this much silence, so clients can tell a quiet stream from a dead one
+    private static final int HEARTBEAT_MILLIS = 15000;
+
+    // reconnect delay suggested to clients
+    private static final int RETRY_MILLIS = 3000;
+
+    // 2018-10-01T00:00:00Z, live events count forwards from here
+    private static final long START_TIME = 1538352000000L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // delay between generated events
+    private final long mIntervalMillis;
+
+    // formatted events, mEvents.get(i) has the stream id mFirstId + i, guarded by mEvents
+    private final List<String> mEvents = new ArrayList<>();
+    private long mFirstId = 1;
+
+    // event ids that were inserted and not deleted, updates and deletes pick from them
+    private final List<String> mLiveIds = new ArrayList<>();
+
+    private final Random mRandom = new Random(42);
+    private int mNextEventNumber;
+
+    public LiveEventSource(double eventsPerSecond) {
+        mIntervalMillis = (long) (1000 / eventsPerSecond);
+    }
+
+    // start generating events on a daemon thread
+    public void start() {
+
+        Thread generator = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(mIntervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    generate();
+                }
+            }
+        }, "LiveEventSource");
+        generator.setDaemon(true);
+        generator.start();
+    }
+
+    // 60% new events, 30% revisions of a live one, 10% deletions of a live one
+    private void generate() {
+
+        int kind = mLiveIds.isEmpty() ? 0 : mRandom.nextInt(10);
+        String type;
+        String data;
+        if (kind < 6) {
+            String id = "lv" + String.format(Locale.US, "%08d", mNextEventNumber++);
+            mLiveIds.add(id);
+            type = "insert";
+            data = Fixtures.feature(mRandom, id, START_TIME + mNextEventNumber * 60000L);
+        } else if (kind < 9) {
+            String id = mLiveIds.get(mRandom.nextInt(mLiveIds.size()));
+            type = "update";
+            data = Fixtures.feature(mRandom, id, START_TIME + Long.parseLong(id.substring(2)) * 60000L);
+        } else {
+            type = "delete";
+            data = mLiveIds.remove(mRandom.nextInt(mLiveIds.size()));
+        }
+
+        synchronized (mEvents) {
+            long id = mFirstId + mEvents.size();
+            mEvents.add("id: " + id + "\nevent: " + type + "\ndata: " + data + "\n\n");
+            if (mEvents.size() > HISTORY) {
+                mEvents.remove(0);
+                mFirstId++;
+            }
+            mEvents.notifyAll();
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+
+        try {
+            // a new client starts with the next event, a reconnecting one right after its last event
+            long next;
+            String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            synchronized (mEvents) {
+                next = lastEventId != null ? Long.parseLong(lastEventId.trim()) + 1 : mFirstId + mEvents.size();
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write(("retry: " + RETRY_MILLIS + "\n\n").getBytes(UTF_8));
+            out.flush();
+
+            // runs until the client goes away and a write fails
+            while (true) {
+                StringBuilder pending = new StringBuilder();
+                synchronized (mEvents) {
+                    if (next >= mFirstId + mEvents.size()) {
+                        mEvents.wait(HEARTBEAT_MILLIS);
+                    }
+
+                    // events older than the history are lost, continue with the oldest one kept
+                    next = Math.max(next, mFirstId);
+                    for (; next < mFirstId + mEvents.size(); next++) {
+                        pending.append(mEvents.get((int) (next - mFirstId)));
+                    }
+                }
+                out.write((pending.length() > 0 ? pending.toString() : ": keepalive\n\n").getBytes(UTF_8));
+                out.flush();
+            }
+
+        } catch (InterruptedException | NumberFormatException e) {
+            // server stopped or a malformed Last-Event-ID, end the stream
+        } finally {
+            exchange.close();
+        }
+    }
+
+}
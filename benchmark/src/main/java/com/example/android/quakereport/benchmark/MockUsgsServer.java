@@ -0,0 +1,254 @@
+package com.example.android.quakereport.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+// local stand-in for the USGS query endpoint, serves Fixtures responses with controllable network conditions
+// start it with "gradlew :benchmark:mockServer -PserverArgs='--latency 300 --bandwidth 256 --gzip'"
+// and build the app with "-PusgsRequestUrl=http://10.0.2.2:8080/fdsnws/event/1/query" to reach it from an emulator
+// it also serves a LiveEventSource stream for "-PusgsLiveUrl=http://10.0.2.2:8080/live"
+public final class MockUsgsServer {
+
+    // same path as the real endpoint so only the host of the base url changes
+    public static final String QUERY_PATH = "/fdsnws/event/1/query";
+
+    // size of each write while throttling, small enough to give a smooth transfer rate
+    private static final int THROTTLE_SLICE = 1024; // bytes
+
+    private final int mPort;
+
+    // delay before the response headers are sent, simulates server time and round trip
+    private final int mLatencyMillis;
+
+    // 0 means unlimited
+    private final int mBandwidthKbps;
+
+    // chunked transfer encoding instead of a Content-Length header
+    private final boolean mChunked;
+
+    // compress responses for clients that send Accept-Encoding: gzip
+    private final boolean mGzip;
+
+    // fraction of requests answered with mErrorCode instead of a feed
+    private final double mErrorRate;
+    private final int mErrorCode;
+
+    // generated fixtures by feature count, they are identical for every request
+    private final Map<Integer, byte[]> mResponses = new ConcurrentHashMap<>();
+
+    // events per second of the live stream
+    private final double mLiveRate;
+
+    private final Random mRandom = new Random();
+    private HttpServer mServer;
+
+    public MockUsgsServer(int port, int latencyMillis, int bandwidthKbps, boolean chunked, boolean gzip,
+                          double errorRate, int errorCode, double liveRate) {
+        mPort = port;
+        mLatencyMillis = latencyMillis;
+        mBandwidthKbps = bandwidthKbps;
+        mChunked = chunked;
+        mGzip = gzip;
+        mErrorRate = errorRate;
+        mErrorCode = errorCode;
+        mLiveRate = liveRate;
+    }
+
+    // start serving on a background thread pool
+    public void start() throws IOException {
+
+        mServer = HttpServer.create(new InetSocketAddress(mPort), 0);
+        mServer.createContext(QUERY_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+
+        // every live client holds a pool thread for as long as it stays subscribed
+        LiveEventSource liveEventSource = new LiveEventSource(mLiveRate);
+        liveEventSource.start();
+        mServer.createContext(LiveEventSource.LIVE_PATH, liveEventSource);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+    }
+
+    public void stop() {
+        if (mServer != null) {
+            mServer.stop(0);
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+
+        // simulated server time and round trip
+        sleep(mLatencyMillis);
+
+        // injected failures
+        if (mErrorRate > 0 && mRandom.nextDouble() < mErrorRate) {
+            exchange.sendResponseHeaders(mErrorCode, -1);
+            return;
+        }
+
+        // the limit parameter selects the fixture size, like the real endpoint
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        int features = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : 20;
+        byte[] body = getResponse(features);
+
+        // fixtures never change, so the ETag lets the client's response cache revalidate with a 304
+        String etag = "\"fixture-" + features + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        // compress when both sides agree
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (mGzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = gzip(body);
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        // a response length of 0 selects chunked transfer encoding
+        exchange.sendResponseHeaders(200, mChunked ? 0 : body.length);
+        writeThrottled(exchange.getResponseBody(), body);
+    }
+
+    // write the body no faster than the configured bandwidth
+    private void writeThrottled(OutputStream out, byte[] body) throws IOException {
+
+        if (mBandwidthKbps <= 0) {
+            out.write(body);
+            return;
+        }
+
+        // kilobits per second to milliseconds per slice
+        double millisPerSlice = THROTTLE_SLICE * 8.0 / mBandwidthKbps;
+        long start = System.nanoTime();
+        for (int offset = 0; offset < body.length; offset += THROTTLE_SLICE) {
+            out.write(body, offset, Math.min(THROTTLE_SLICE, body.length - offset));
+            out.flush();
+
+            // sleep until this slice is due, so rounding errors do not accumulate
+            long due = (long) ((offset / THROTTLE_SLICE + 1) * millisPerSlice);
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            sleep((int) (due - elapsed));
+        }
+    }
+
+    private byte[] getResponse(int features) {
+
+        byte[] response = mResponses.get(features);
+        if (response == null) {
+            response = Fixtures.geoJson(features).getBytes(Charset.forName("UTF-8"));
+            mResponses.put(features, response);
+        }
+        return response;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 8);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(body);
+        gzip.close();
+        return compressed.toByteArray();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private static void sleep(int millis) {
+
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --port 8080 --latency <ms> --bandwidth <kbps> --fixed-length --gzip --error-rate <0..1> --error-code <code>
+    // --live-rate <events per second>
+    public static void main(String[] args) throws IOException {
+
+        int port = 8080;
+        int latency = 0;
+        int bandwidth = 0;
+        boolean chunked = true;
+        boolean gzip = false;
+        double errorRate = 0;
+        int errorCode = 503;
+        double liveRate = 1;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--latency":
+                    latency = Integer.parseInt(args[++i]);
+                    break;
+                case "--bandwidth":
+                    bandwidth = Integer.parseInt(args[++i]);
+                    break;
+                case "--fixed-length":
+                    chunked = false;
+                    break;
+                case "--gzip":
+                    gzip = true;
+                    break;
+                case "--error-rate":
+                    errorRate = Double.parseDouble(args[++i]);
+                    break;
+                case "--error-code":
+                    errorCode = Integer.parseInt(args[++i]);
+                    break;
+                case "--live-rate":
+                    liveRate = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        new MockUsgsServer(port, latency, bandwidth, chunked, gzip, errorRate, errorCode, liveRate).start();
+        System.out.println("Serving USGS fixtures on http://localhost:" + port + QUERY_PATH);
+        System.out.println("Serving live events on http://localhost:" + port + LiveEventSource.LIVE_PATH);
+    }
+
+}